@@ -2,6 +2,9 @@ package program.controller;
 
 import program.model.Model;
 import program.model.ModelContact;
+import program.model.Metric;
+import program.model.RTree;
+import program.model.RoutePlanner;
 import program.shared.MapElement;
 import program.shared.MapPoint;
 import program.shared.Point;
@@ -71,18 +74,35 @@ public class CommandExecutor {
 
     public void setDisplay(String theme){
         model.setTheme(theme);
-        controller.draw();
+        controller.invalidate();
     }
 
     public void setModeOfTransportation(MOT modeOfTransportation){
         model.setModeOfTransportation(modeOfTransportation);
     }
 
+    public void setRoutingAlgorithm(RoutePlanner.algorithm algorithm){
+        model.setRoutingAlgorithm(algorithm);
+    }
+
+    public void setRoutingProfile(Metric.profile profile){
+        model.setRoutingProfile(profile);
+    }
+
+    public void setQueryFilter(RTree.queryFilter filter) {
+        model.setQueryFilter(filter);
+        controller.invalidate();
+    }
+
+    public void setUseTileCache(boolean useTileCache) {
+        controller.setUseTileCache(useTileCache);
+    }
+
     public void setDebug() {
         model.setDebug(true);
         // Use points from view
         model.setDrawingArea(new float[]{ 0, 0 }, new float[]{ 100, 100 }, 0);
         model.getElementsToDraw();
-        controller.draw();
+        controller.invalidate();
     }
 }
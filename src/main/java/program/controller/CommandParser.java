@@ -1,5 +1,11 @@
 package program.controller;
 
+import program.model.Metric;
+import program.model.RTree;
+import program.model.RoutePlanner;
+
+import java.util.Arrays;
+
 import static program.model.Model.MOT.*;
 
 public class CommandParser {
@@ -107,6 +113,39 @@ public class CommandParser {
             case "!debug":
                 c.setDebug();
                 break;
+            case "!filter":
+                switch (address) {
+                    case "leaf" -> c.setQueryFilter(RTree.queryFilter.LEAF);
+                    case "box" -> c.setQueryFilter(RTree.queryFilter.BOUNDING_BOX);
+                    case "clip" -> c.setQueryFilter(RTree.queryFilter.CLIP);
+                    default -> throw new IllegalCommandException("Command !filter takes leaf, box or clip");
+                }
+                break;
+            case "!route":
+                switch (address) {
+                    case "dijkstra" -> c.setRoutingAlgorithm(RoutePlanner.algorithm.DIJKSTRA);
+                    case "astar" -> c.setRoutingAlgorithm(RoutePlanner.algorithm.A_STAR);
+                    case "alt" -> c.setRoutingAlgorithm(RoutePlanner.algorithm.ALT);
+                    case "ch" -> c.setRoutingAlgorithm(RoutePlanner.algorithm.CH);
+                    default -> throw new IllegalCommandException("Command !route takes dijkstra, astar, alt or ch");
+                }
+                break;
+            case "!profile":
+                if (address.equals("off")) {
+                    c.setRoutingProfile(null);
+                    break;
+                }
+                try {
+                    c.setRoutingProfile(Metric.profile.valueOf(address.toUpperCase().replace(' ', '_')));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalCommandException("Command !profile takes off or one of " + Arrays.toString(Metric.profile.values()));
+                }
+                break;
+            case "!tiles":
+                if (address.equals("on")) c.setUseTileCache(true);
+                else if (address.equals("off")) c.setUseTileCache(false);
+                else throw new IllegalCommandException("Command !tiles takes on or off");
+                break;
 
             default:
                 throw new IllegalCommandException("Command " + toExecute + " is not a legal command");
@@ -1,5 +1,6 @@
 package program.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.geometry.Bounds;
@@ -26,8 +27,11 @@ import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Controller implements Initializable {
 
@@ -65,6 +69,23 @@ public class Controller implements Initializable {
     private List<MapElement> focusedElements;
     private int zoom;
 
+    private TileCache tileCache;
+    // Draw the map from cached raster tiles instead of querying and drawing every element each frame
+    private boolean useTileCache = true;
+
+    private RenderScheduler renderScheduler;
+    // Without the tile cache the elements are queried on this thread, one query at a time
+    private final ExecutorService queryThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "map-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean queryRunning = false;
+    // View of the last query that was started, and the elements of the last one that finished
+    private float[] queriedMin, queriedMax;
+    private List<MapElement> queriedElements = List.of();
+    private final StyleBatcher batcher = new StyleBatcher();
+
     public static Controller getInstance(){
         if (instance == null) throw new RuntimeException();
         return instance;
@@ -91,6 +112,8 @@ public class Controller implements Initializable {
             throw new RuntimeException(e);
         }
         commandExecutor = new CommandExecutor(model);
+        tileCache = new TileCache(model, this::draw);
+        renderScheduler = new RenderScheduler(this::drawFrame);
 
         pan(-0.56*model.getMinLon(), model.getMaxLat());
         zoom(0, 0, canvas.getHeight() / (model.getMaxLat() - model.getMinLat()));
@@ -174,25 +197,37 @@ public class Controller implements Initializable {
         }
     }
 
+    /**
+     * Asks for the map to be redrawn on the next pulse. Any number of calls before then give one frame.
+     */
     public void draw() {
+        renderScheduler.request();
+    }
+
+    private void drawFrame() {
         //var start = System.nanoTime();
 
         graphicsContext.setTransform(new Affine());
         graphicsContext.setLineWidth(1/Math.sqrt(trans.determinant()));
 
-        model.getTheme().prepareDraw(graphicsContext, "land", trans.determinant());
-        graphicsContext.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        zoom = (int) trans.getMxx();
+        zoomLevel.setText(String.valueOf(Math.round(zoom / 1000F)));
 
-        graphicsContext.setTransform(trans);
+        if (useTileCache) {
+            tileCache.draw(graphicsContext, trans, canvas.getWidth(), canvas.getHeight());
+            graphicsContext.setTransform(trans);
+            graphicsContext.setLineWidth(1/Math.sqrt(trans.determinant()));
+        } else {
+            model.getTheme().prepareDraw(graphicsContext, "land", trans.determinant());
+            graphicsContext.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
 
-        zoom = (int) graphicsContext.getTransform().getMxx();
-        zoomLevel.setText(String.valueOf(Math.round(zoom / 1000F)));
+            graphicsContext.setTransform(trans);
 
-        model.setDrawingArea(drawingBoundMin, drawingBoundMax, zoom);
+            requestElements();
 
-        for (MapElement e : model.getElementsToDraw()) {
-            model.getTheme().prepareDraw(graphicsContext, e.getType(), trans.determinant());
-            e.draw(graphicsContext);
+            // Elements are in map coordinates, so the last result is drawn correctly even if the view moved since
+            queriedElements.forEach(batcher);
+            batcher.draw(graphicsContext, model.getTheme(), trans.determinant(), (float) (1 / Math.sqrt(trans.determinant())));
         }
 
         if (model.getPlannedRoute() != null) for (MapElement e : model.getPlannedRoute()) {
@@ -212,6 +247,41 @@ public class Controller implements Initializable {
         //System.out.println((System.nanoTime() - start) / 1000000);
     }
 
+    /**
+     * Queries the elements of the current view on the query thread unless that view was queried already.
+     * Only one query runs at a time. Views passed while it runs are dropped, and when it finishes the
+     * view at that moment is queried next, so a burst of zooming costs at most one extra query.
+     */
+    private void requestElements() {
+        if (queryRunning || (Arrays.equals(drawingBoundMin, queriedMin) && Arrays.equals(drawingBoundMax, queriedMax))) return;
+        queryRunning = true;
+        float[] min = queriedMin = drawingBoundMin.clone(), max = queriedMax = drawingBoundMax.clone();
+        int zoom = this.zoom;
+        queryThread.execute(() -> {
+            List<MapElement> elements = new ArrayList<>();
+            model.queryElements(min, max, zoom, elements::add);
+            Platform.runLater(() -> {
+                queryRunning = false;
+                queriedElements = elements;
+                draw();
+            });
+        });
+    }
+
+    /**
+     * Redraws the map from scratch, for changes that alter how elements are drawn.
+     */
+    public void invalidate() {
+        tileCache.clear();
+        queriedMin = queriedMax = null;
+        draw();
+    }
+
+    public void setUseTileCache(boolean useTileCache) {
+        this.useTileCache = useTileCache;
+        draw();
+    }
+
     public void showHelpPopup(){
         view.showHelpPopup();
     }
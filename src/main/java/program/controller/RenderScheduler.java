@@ -0,0 +1,32 @@
+package program.controller;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Coalesces draw requests into at most one frame per JavaFX pulse. Scroll and drag events only mark the
+ * map as dirty, so a burst of input between two pulses costs a single redraw instead of one per event.
+ * The timer only runs while a frame is pending, so an idle map doesn't wake up on every pulse.
+ */
+class RenderScheduler extends AnimationTimer {
+    private final Runnable drawFrame;
+    private boolean requested = false;
+
+    RenderScheduler(Runnable drawFrame) {
+        this.drawFrame = drawFrame;
+    }
+
+    // Must be called on the FX thread
+    void request() {
+        if (requested) return;
+        requested = true;
+        start();
+    }
+
+    @Override
+    public void handle(long now) {
+        requested = false;
+        drawFrame.run();
+        // Drawing may have asked for another frame, which keeps the timer going
+        if (!requested) stop();
+    }
+}
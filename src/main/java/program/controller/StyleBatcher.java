@@ -0,0 +1,73 @@
+package program.controller;
+
+import javafx.scene.canvas.GraphicsContext;
+import program.shared.ITraceable;
+import program.shared.MapElement;
+import program.view.Theme;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collects the elements of a frame by type so each style is set once and all its elements are painted
+ * with a single path: one fill per area type and one stroke per line type, instead of a beginPath,
+ * a style change and a stroke per element. Areas are painted first, then lines, each in the order their
+ * types first appear in the frame, then the elements that can only draw themselves (points and debug boxes).
+ * The lists are kept between frames, so a reused batcher doesn't allocate once it has grown.
+ */
+class StyleBatcher implements Consumer<MapElement> {
+    private final Map<String, List<ITraceable>> fills = new HashMap<>();
+    private final Map<String, List<ITraceable>> strokes = new HashMap<>();
+    // The lists of the types seen this frame, in the order they were first seen
+    private final List<List<ITraceable>> fillOrder = new ArrayList<>();
+    private final List<List<ITraceable>> strokeOrder = new ArrayList<>();
+    private final List<MapElement> others = new ArrayList<>();
+
+    @Override
+    public void accept(MapElement e) {
+        if (!(e instanceof ITraceable traceable)) {
+            others.add(e);
+            return;
+        }
+        switch (traceable.getPaint()) {
+            case FILL -> add(fills, fillOrder, e.getType(), traceable);
+            case STROKE -> add(strokes, strokeOrder, e.getType(), traceable);
+        }
+    }
+
+    private static void add(Map<String, List<ITraceable>> groups, List<List<ITraceable>> order, String type, ITraceable e) {
+        List<ITraceable> group = groups.computeIfAbsent(type, t -> new ArrayList<>());
+        if (group.isEmpty()) order.add(group);
+        group.add(e);
+    }
+
+    /**
+     * Paints the collected elements and empties the batcher for the next frame.
+     */
+    void draw(GraphicsContext gc, Theme theme, double determinant, float pixelSize) {
+        paint(gc, fillOrder, theme, determinant, pixelSize, true);
+        paint(gc, strokeOrder, theme, determinant, pixelSize, false);
+        for (MapElement e : others) {
+            theme.prepareDraw(gc, e.getType(), determinant);
+            e.draw(gc, pixelSize);
+        }
+        others.clear();
+    }
+
+    private void paint(GraphicsContext gc, List<List<ITraceable>> order, Theme theme, double determinant, float pixelSize, boolean fill) {
+        for (List<ITraceable> elements : order) {
+            MapElement first = (MapElement) elements.get(0);
+            theme.prepareDraw(gc, first.getType(), determinant);
+            first.prepareStyle(gc);
+            gc.beginPath();
+            for (ITraceable e : elements) e.trace(gc, pixelSize);
+            if (fill) gc.fill();
+            else gc.stroke();
+            elements.clear();
+        }
+        order.clear();
+    }
+}
@@ -0,0 +1,164 @@
+package program.controller;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Affine;
+import program.model.ModelContact;
+import program.view.Theme;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Raster cache of the map in square tiles. Tiles exist for fixed zoom levels, level k being drawn at
+ * BASE_SCALE * 2^k pixels per map unit, and are laid out on a grid in screen space (x, -latitude).
+ * Missing tiles are queried and drawn onto an offscreen canvas on a render thread, and only the snapshot
+ * into a WritableImage happens on the FX thread as JavaFX requires. Until a tile is ready the nearest
+ * coarser cached tile is stretched over its area. The least recently drawn tiles are evicted first.
+ */
+class TileCache {
+    static final int TILE_SIZE = 256;
+    private static final double BASE_SCALE = 100;
+    // About 6.5 million pixels per map unit, far past the closest zoom anyone uses
+    private static final int MAX_LEVEL = 16;
+    // 256 tiles of 256 x 256 ARGB pixels is 64 MB
+    private static final int MAX_TILES = 256;
+    // How many levels up a missing tile looks for a stand-in
+    private static final int FALLBACK_LEVELS = 4;
+    // The widest line drawn is 5 pixels, so elements this close to a tile can still reach into it
+    private static final int MARGIN_PIXELS = 5;
+
+    private final ModelContact model;
+    private final Runnable onTileReady;
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tile-renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only used on the FX thread
+    private final Map<Long, WritableImage> tiles = new LinkedHashMap<>(MAX_TILES, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, WritableImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private final Set<Long> pending = new HashSet<>();
+    // Bumped by clear, tiles rendered for an older generation are thrown away
+    private int generation = 0;
+    // Tiles of the last frame; queued renders that scrolled out of view are skipped
+    private volatile Set<Long> visible = Set.of();
+
+    TileCache(ModelContact model, Runnable onTileReady) {
+        this.model = model;
+        this.onTileReady = onTileReady;
+    }
+
+    static int levelFor(double scale) {
+        int level = (int) Math.round(Math.log(scale / BASE_SCALE) / Math.log(2));
+        return Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+
+    static double scaleOf(int level) {
+        return BASE_SCALE * Math.pow(2, level);
+    }
+
+    static long key(int level, int x, int y) {
+        return ((long) level << 58) | ((x & 0x1FFFFFFFL) << 29) | (y & 0x1FFFFFFFL);
+    }
+
+    /**
+     * Draws the tiles covering the canvas for the given transform and requests the missing ones.
+     * The graphics context must have the identity transform. Must be called on the FX thread.
+     */
+    void draw(GraphicsContext gc, Affine trans, double width, double height) {
+        double scale = trans.getMxx();
+        int level = levelFor(scale);
+        // Screen size of one tile at this level
+        double size = TILE_SIZE * scale / scaleOf(level);
+
+        int firstX = (int) Math.floor(-trans.getTx() / size), lastX = (int) Math.floor((width - trans.getTx()) / size);
+        int firstY = (int) Math.floor(-trans.getTy() / size), lastY = (int) Math.floor((height - trans.getTy()) / size);
+        Set<Long> nowVisible = new HashSet<>();
+        Theme theme = model.getTheme();
+        for (int x = firstX; x <= lastX; x++) {
+            for (int y = firstY; y <= lastY; y++) {
+                long key = key(level, x, y);
+                nowVisible.add(key);
+                double screenX = trans.getTx() + x * size, screenY = trans.getTy() + y * size;
+                WritableImage tile = tiles.get(key);
+                if (tile != null) {
+                    gc.drawImage(tile, screenX, screenY, size, size);
+                    continue;
+                }
+                drawFallback(gc, level, x, y, screenX, screenY, size);
+                if (pending.add(key)) {
+                    int tileLevel = level, tileX = x, tileY = y, tileGeneration = generation;
+                    renderer.execute(() -> render(key, tileLevel, tileX, tileY, tileGeneration, theme));
+                }
+            }
+        }
+        visible = nowVisible;
+    }
+
+    // Stretches the part of a coarser cached tile that covers the missing tile over it
+    private void drawFallback(GraphicsContext gc, int level, int x, int y, double screenX, double screenY, double size) {
+        for (int up = 1; up <= FALLBACK_LEVELS && up <= level; up++) {
+            int parentX = Math.floorDiv(x, 1 << up), parentY = Math.floorDiv(y, 1 << up);
+            WritableImage parent = tiles.get(key(level - up, parentX, parentY));
+            if (parent == null) continue;
+            double part = TILE_SIZE / (double) (1 << up);
+            double sourceX = (x - parentX * (1 << up)) * part, sourceY = (y - parentY * (1 << up)) * part;
+            gc.drawImage(parent, sourceX, sourceY, part, part, screenX, screenY, size, size);
+            return;
+        }
+    }
+
+    // Runs on the render thread
+    private void render(long key, int level, int x, int y, int generation, Theme theme) {
+        if (!visible.contains(key)) {
+            Platform.runLater(() -> {
+                if (generation == this.generation) pending.remove(key);
+            });
+            return;
+        }
+        double scale = scaleOf(level);
+        double determinant = scale * scale;
+        float pixelSize = (float) (1 / scale);
+        float margin = MARGIN_PIXELS * pixelSize;
+        // Tiles are laid out in screen space, where y is the negated latitude
+        float[] min = { (float) (x * TILE_SIZE / scale) - margin, (float) (-(y + 1) * TILE_SIZE / scale) - margin };
+        float[] max = { (float) ((x + 1) * TILE_SIZE / scale) + margin, (float) (-y * TILE_SIZE / scale) + margin };
+
+        // A canvas that isn't part of a scene may be drawn on from any thread
+        Canvas canvas = new Canvas(TILE_SIZE, TILE_SIZE);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        theme.prepareDraw(gc, "land", determinant);
+        gc.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        gc.setTransform(new Affine(scale, 0, -x * (double) TILE_SIZE, 0, scale, -y * (double) TILE_SIZE));
+        gc.setLineWidth(pixelSize);
+        StyleBatcher batcher = new StyleBatcher();
+        model.queryElements(min, max, (int) scale, batcher);
+        batcher.draw(gc, theme, determinant, pixelSize);
+
+        Platform.runLater(() -> {
+            if (generation != this.generation) return;
+            pending.remove(key);
+            tiles.put(key, canvas.snapshot(null, new WritableImage(TILE_SIZE, TILE_SIZE)));
+            onTileReady.run();
+        });
+    }
+
+    /**
+     * Drops every tile, for when the map would be drawn differently (theme, filters, debug boxes).
+     * Must be called on the FX thread.
+     */
+    void clear() {
+        generation++;
+        tiles.clear();
+        pending.clear();
+    }
+}
@@ -30,6 +30,18 @@ public class AddressBook implements Serializable {
         tst.put(address, location);
     }
 
+    void addAddress(String street, String restOfAddress, Point location) {
+        tst.put(street, restOfAddress, location);
+    }
+
+    void forEachAddress(AddressConsumer consumer) {
+        tst.collect(tst.root, new StringBuilder(), consumer);
+    }
+
+    interface AddressConsumer {
+        void accept(String street, String restOfAddress, Point location);
+    }
+
     public MapPoint addressSearch(Address address) {
         Point point = tst.get(address);
         if (point == null) throw new AddressParser.InvalidAddressException("Invalid address", address.toString());
@@ -43,7 +55,11 @@ class Trie implements Serializable {
 
     void put(Address address, Point location){
         String restOfAddress = address.getHouse() + " " + address.getCity();
-        root = put(root, 0, address.getStreet(), restOfAddress, location);
+        put(address.getStreet(), restOfAddress, location);
+    }
+
+    void put(String street, String restOfAddress, Point location){
+        root = put(root, 0, street, restOfAddress, location);
     }
 
     Node put(Node node, int depth, String street, String restOfAddress, Point location){
@@ -59,6 +75,22 @@ class Trie implements Serializable {
         return node;
     }
 
+    // Visits every stored address in street order
+    void collect(Node node, StringBuilder street, AddressBook.AddressConsumer consumer) {
+        if (node == null) return;
+        collect(node.left, street, consumer);
+        street.append(node.character);
+        if (node.addresses != null) {
+            String streetName = street.toString();
+            for (Map.Entry<String, Point> entry : node.addresses.entrySet()) {
+                consumer.accept(streetName, entry.getKey(), entry.getValue());
+            }
+        }
+        collect(node.middle, street, consumer);
+        street.setLength(street.length() - 1);
+        collect(node.right, street, consumer);
+    }
+
     Point get(Address address){
         String street = address.getStreet();
         String restOfAddress = address.getHouse() + " " + address.getCity();
@@ -1,26 +1,50 @@
 package program.model;
 
 import program.shared.MapRoadSegment;
-import static program.model.Model.MOT.*;
 
 import java.util.*;
 
 public class BiDirectionalDijkstra {
-    private HashMap<Vertex, DirectedEdge> previousEdge;
-    private PriorityQueue<Vertex> forwardPQ;
-    private PriorityQueue<Vertex> backwardPQ;
-    private HashSet<Vertex> forwardMarked;
-    private HashSet<Vertex> backwardMarked;
-
-    private Vertex shortestForward;
-    private Vertex shortestBackward;
+    private final Graph graph;
+    // Per vertex: distance from the source / to the destination, and the edge it was reached by
+    private final SearchSpace forward;
+    private final SearchSpace backward;
+    private final Potential potential;
+    // Vertices taken from the queues by both searches together
+    private int settledCount = 0;
+
+    // The edge joining the two searches on the shortest path found so far
+    private int bridge;
     public float currentShortestPathLength;
-    private Deque<DirectedEdge> edgePath = new ArrayDeque<>();
+    private Deque<Integer> edgePath = new ArrayDeque<>();
     private final Model.MOT modeOfTransport;
 
-    public BiDirectionalDijkstra(Vertex source, Vertex destination, Model.MOT modeOfTransport){
+    public BiDirectionalDijkstra(Graph graph, int source, int destination, Model.MOT modeOfTransport){
+        this(graph, source, destination, modeOfTransport, new SearchSpace(graph.vertexCount()), new SearchSpace(graph.vertexCount()));
+    }
+
+    /**
+     * Finds the route using the given search spaces, so a caller planning many routes doesn't allocate
+     * arrays the size of the graph for each of them. The spaces may not be used by another search at the same time.
+     */
+    BiDirectionalDijkstra(Graph graph, int source, int destination, Model.MOT modeOfTransport, SearchSpace forward, SearchSpace backward){
+        this(graph, source, destination, modeOfTransport, forward, backward, Potential.NONE);
+    }
+
+    /**
+     * Bidirectional A* with the given potential, which must be consistent for the mode of transport.
+     */
+    BiDirectionalDijkstra(Graph graph, int source, int destination, Model.MOT modeOfTransport, SearchSpace forward, SearchSpace backward, Potential potential){
         if (source == destination) throw new IllegalArgumentException("Identical source and destination");
+        if (forward == backward) throw new IllegalArgumentException("The searches need a search space each");
+        if (forward.size() != graph.vertexCount() || backward.size() != graph.vertexCount()) {
+            throw new IllegalArgumentException("Search space does not fit a graph of " + graph.vertexCount() + " vertices");
+        }
 
+        this.graph = graph;
+        this.forward = forward;
+        this.backward = backward;
+        this.potential = potential;
         this.modeOfTransport = modeOfTransport;
         initializeDataStructures();
         prepareCurrentShortestPathRelatedFields();
@@ -30,206 +54,165 @@ public class BiDirectionalDijkstra {
     }
 
     private void initializeDataStructures(){
-        previousEdge = new HashMap<>();
-        forwardPQ = new PriorityQueue<>();
-        backwardPQ = new PriorityQueue<>();
-        forwardMarked = new HashSet<>();
-        backwardMarked = new HashSet<>();
+        forward.reset();
+        backward.reset();
     }
 
     private void prepareCurrentShortestPathRelatedFields(){
-        shortestForward = null;
-        shortestBackward = null;
+        bridge = -1;
         currentShortestPathLength = Float.MAX_VALUE;
     }
 
-    private void prepareSourceAndDestination(Vertex source, Vertex destination){
-        source.setDistTo(0);
-        destination.setDistTo(0);
-        forwardPQ.add(source);
-        backwardPQ.add(destination);
-        forwardMarked.add(source);
-        backwardMarked.add(destination);
+    private void prepareSourceAndDestination(int source, int destination){
+        forward.set(source, 0, -1);
+        backward.set(destination, 0, -1);
+        forward.queue.insertOrDecrease(source, potential.forward(source));
+        backward.queue.insertOrDecrease(destination, -potential.forward(destination));
     }
 
     private void findPath(){
         while (shorterPathPossible()){
             searchForward();
+            if (!shorterPathPossible()) break;
             searchBackward();
         }
 
-        setEdgePath();
-
         // check if path has been found
-        if (shortestForward == null) throw new IllegalArgumentException("No such path exists");
+        if (bridge == -1) throw new IllegalArgumentException("No such path exists");
+
+        setEdgePath();
     }
 
     private void searchForward() {
-        Vertex currentVertex = forwardPQ.remove();
-
-        for (DirectedEdge directedEdge : currentVertex.outEdges){
-            if(skipEdge(directedEdge)) continue;
-            //Triggers if vertexTo is in the opposite search-space
-            if (backwardMarked.contains(directedEdge.toVertex())){
-                evaluatePath(directedEdge);
-            }
-            else {
-                relaxForward(directedEdge);
+        int currentVertex = forward.queue.poll();
+        settledCount++;
+
+        for (int edge = graph.firstOut[currentVertex]; edge < graph.firstOut[currentVertex + 1]; edge++){
+            if (skipEdge(edge)) continue;
+            relaxForward(currentVertex, edge);
+            //Triggers if the head is in the opposite search-space
+            if (backward.isReached(graph.head[edge])){
+                evaluatePath(currentVertex, edge, graph.head[edge]);
             }
         }
     }
 
     private void searchBackward() {
-        Vertex currentVertex = backwardPQ.remove();
-
-        for (DirectedEdge directedEdge : currentVertex.inEdges){
-            if(skipEdge(directedEdge)) continue;
-
-            //Triggers if vertexFrom is in the opposite search-space
-            if (forwardMarked.contains(directedEdge.fromVertex())){
-                // evaluatePath(directedEdge); // should not be necessary as we do not wish to evaluate all paths from both directions
-            }
-            else {
-                relaxBackward(directedEdge);
+        int currentVertex = backward.queue.poll();
+        settledCount++;
+
+        for (int i = graph.firstIn[currentVertex]; i < graph.firstIn[currentVertex + 1]; i++){
+            int edge = graph.inEdge[i];
+            if (skipEdge(edge)) continue;
+            relaxBackward(currentVertex, edge, graph.tail[i]);
+            //Triggers if the tail is in the opposite search-space
+            if (forward.isReached(graph.tail[i])){
+                evaluatePath(graph.tail[i], edge, currentVertex);
             }
         }
     }
 
-    private boolean skipEdge(DirectedEdge directedEdge){
-        if(modeOfTransport == CAR){
-            if (!directedEdge.getMapRoadSegment().isCarAllowed()){
-                return true;
-            }
-        }
-        if(modeOfTransport == BIKE || modeOfTransport == WALK){
-            if (directedEdge.getMapRoadSegment().isOnlyCarAllowed()){
-                return true;
-            }
-        }
-        return false;
+    private boolean skipEdge(int edge){
+        return !graph.isAllowed(edge, modeOfTransport);
     }
 
-    private void evaluatePath(DirectedEdge directedEdge) {
-        Vertex fromVertex = directedEdge.fromVertex();
-        Vertex toVertex = directedEdge.toVertex();
-        float pathLength = fromVertex.distTo + directedEdge.weight(modeOfTransport) + toVertex.distTo;
+    private void evaluatePath(int fromVertex, int edge, int toVertex) {
+        float pathLength = forward.distTo(fromVertex) + graph.weight(edge, modeOfTransport) + backward.distTo(toVertex);
 
         if (pathLength < currentShortestPathLength) {
             currentShortestPathLength = pathLength;
-            shortestForward = fromVertex;
-            shortestBackward = toVertex;
+            bridge = edge;
         }
     }
 
-    private void relaxForward(DirectedEdge edge) {
-        float edgeWeight = edge.weight(modeOfTransport);
-        Vertex vertexTo = edge.toVertex();
-        Vertex vertexFrom = edge.fromVertex();
-
-        //Triggers if the vertexTo has been explored as part of this search space before otherwise ignores the vertex since it might have values from a previous search
-        if (forwardMarked.contains(vertexTo)){
-            if(vertexFrom.distTo + edgeWeight < vertexTo.distTo){
-                forwardPQ.remove(vertexTo); // Remove old element to update and insert again
-                vertexTo.distTo = vertexFrom.distTo + edgeWeight;
-                previousEdge.put(vertexTo, edge);
-                forwardPQ.add(vertexTo);
-            }
-        }
-        //Triggers if the vertexTo has yet to be explored altogether in this search
-        else {
-            vertexTo.distTo = vertexFrom.distTo + edgeWeight;
-            previousEdge.put(vertexTo, edge);
-            forwardMarked.add(vertexTo);
-            forwardPQ.add(vertexTo);
-        }
-    }
+    private void relaxForward(int vertexFrom, int edge) {
+        int vertexTo = graph.head[edge];
+        float distance = forward.distTo(vertexFrom) + graph.weight(edge, modeOfTransport);
+        if (distance >= forward.distTo(vertexTo)) return;
 
-    private void relaxBackward(DirectedEdge edge){
-        float edgeWeight = edge.weight(modeOfTransport);
+        forward.set(vertexTo, distance, edge);
+        // Lowers the key in place if vertexTo is queued already
+        forward.queue.insertOrDecrease(vertexTo, distance + potential.forward(vertexTo));
+    }
 
+    private void relaxBackward(int vertexFrom, int edge, int vertexTo){
         // the vertices are switched as the backward-search goes backwards
-        Vertex vertexTo = edge.fromVertex();
-        Vertex vertexFrom = edge.toVertex();
-
-        //Triggers if the vertexTo has been explored as part of this search space before otherwise ignores the vertex since it might have values from a previous search
-        if (backwardMarked.contains(vertexTo)){
-            if(vertexFrom.distTo + edgeWeight < vertexTo.distTo){
-                backwardPQ.remove(vertexTo); // Remove old element to update and insert again
-                vertexTo.distTo = vertexFrom.distTo + edgeWeight;
-                previousEdge.put(vertexTo, edge);
-                backwardPQ.add(vertexTo);
-            }
-        }
-        //Triggers if the vertexTo has yet to be explored altogether in this search
-        else {
-            vertexTo.distTo = vertexFrom.distTo + edgeWeight;
-            previousEdge.put(vertexTo, edge);
-            backwardMarked.add(vertexTo);
-            backwardPQ.add(vertexTo);
-        }
+        float distance = backward.distTo(vertexFrom) + graph.weight(edge, modeOfTransport);
+        if (distance >= backward.distTo(vertexTo)) return;
+
+        backward.set(vertexTo, distance, edge);
+        backward.queue.insertOrDecrease(vertexTo, distance - potential.forward(vertexTo));
     }
 
     private boolean shorterPathPossible(){
-        if (forwardPQ.isEmpty() || backwardPQ.isEmpty()) return false;
+        if (forward.queue.isEmpty() || backward.queue.isEmpty()) return false;
 
-        float forwardRadius = forwardPQ.peek().distTo;
-        float backwardRadius = backwardPQ.peek().distTo;
+        // With a potential these are not radii but still sum to a lower bound of any path not found yet
+        float forwardRadius = forward.queue.peekKey();
+        float backwardRadius = backward.queue.peekKey();
 
         return forwardRadius + backwardRadius < currentShortestPathLength;
     }
 
-
-    private DirectedEdge getBridge() {
-        DirectedEdge bridge = shortestForward.outEdges.iterator().next();
-        for (DirectedEdge edgeCandidate : shortestForward.outEdges)
-            if (edgeCandidate.toVertex() == shortestBackward) {
-                bridge = edgeCandidate;
-                break;
-            }
-        return bridge;
-    }
-
     public void setEdgePath(){
-        edgePath.push(getBridge());
+        edgePath.push(bridge);
 
-        DirectedEdge currentEdge = previousEdge.get(shortestForward);
-        while (currentEdge != null){
+        int currentEdge = forward.edgeTo(graph.tail(bridge));
+        while (currentEdge != -1){
             edgePath.push(currentEdge);
-            currentEdge = previousEdge.getOrDefault(currentEdge.fromVertex(), null);
+            currentEdge = forward.edgeTo(graph.tail(currentEdge));
         }
 
-        currentEdge = previousEdge.get(shortestBackward);
-        while (currentEdge != null){
+        currentEdge = backward.edgeTo(graph.head[bridge]);
+        while (currentEdge != -1){
             edgePath.add(currentEdge);
-            currentEdge = previousEdge.getOrDefault(currentEdge.toVertex(), null);
+            currentEdge = backward.edgeTo(graph.head[currentEdge]);
         }
     }
 
+    public int getSettledCount() {
+        return settledCount;
+    }
+
     public List<MapRoadSegment> getPath(){
+        return getPath(graph, edgePath);
+    }
+
+    public Iterable<String> getInstructions(){
+        return getInstructions(graph, edgePath);
+    }
+
+    /**
+     * The road segments of a path given by the ids of its edges in the graph.
+     */
+    static List<MapRoadSegment> getPath(Graph graph, Iterable<Integer> edgePath){
         List<MapRoadSegment> segments = new ArrayList<>();
 
-        for (DirectedEdge edge : edgePath){
-            segments.add(edge.getMapRoadSegment());
+        for (int edge : edgePath){
+            segments.add(graph.segment(edge));
         }
 
         return segments;
     }
 
-    public Iterable<String> getInstructions(){
+    /**
+     * The turn instructions along a path given by the ids of its edges in the graph.
+     */
+    static Iterable<String> getInstructions(Graph graph, Iterable<Integer> edgePath){
         ArrayList<String> instructions = new ArrayList<>();
 
-        DirectedEdge previous = null;
-        for (DirectedEdge edge : edgePath){
-            if (previous == null){
+        int previous = -1;
+        for (int edge : edgePath){
+            if (previous == -1){
                 previous = edge;
                 continue;
             }
 
-            String previousRoadName = previous.getMapRoadSegment().getName(); // In need of memory, remove this as variable:)
-            String currentRoadName = edge.getMapRoadSegment().getName();
+            String previousRoadName = graph.segment(previous).getName(); // In need of memory, remove this as variable:)
+            String currentRoadName = graph.segment(edge).getName();
 
             if(!currentRoadName.equals(previousRoadName)) {
-                instructions.add(getDirection(previous, edge) + " " + currentRoadName);
+                instructions.add(getDirection(graph, previous, edge) + " " + currentRoadName);
             }
 
             previous = edge;
@@ -237,7 +220,7 @@ public class BiDirectionalDijkstra {
         return instructions;
     }
 
-    private String getDirection(DirectedEdge comingFrom, DirectedEdge goingTo){
+    private static String getDirection(Graph graph, int comingFrom, int goingTo){
         String DIRECTION_RIGHT = "Turn right onto";
         String DIRECTION_LEFT = "Turn left onto";
         String DIRECTION_STRAIGHT = "Continue on";
@@ -245,7 +228,7 @@ public class BiDirectionalDijkstra {
         
 
         float angle = (float) Math.toDegrees(Math.acos(
-                dotProduct(comingFrom, goingTo) / (comingFrom.getMapRoadSegment().getDistance() * goingTo.getMapRoadSegment().getDistance())
+                dotProduct(graph, comingFrom, goingTo) / (graph.length[comingFrom] * graph.length[goingTo])
         ));
 
         // if the angle is < 20 degrees: straight
@@ -260,7 +243,7 @@ public class BiDirectionalDijkstra {
             }
         }
 
-        float crossProduct = CrossProduct(comingFrom, goingTo);
+        float crossProduct = CrossProduct(graph, comingFrom, goingTo);
 
         if (crossProduct > 0){
             return DIRECTION_LEFT;
@@ -269,20 +252,22 @@ public class BiDirectionalDijkstra {
         }
     }
 
-    private float CrossProduct(DirectedEdge comingFrom, DirectedEdge goingTo){
-        Vertex from = comingFrom.fromVertex();
-        Vertex intersection = comingFrom.toVertex();
-        Vertex to = goingTo.toVertex();
+    private static float CrossProduct(Graph graph, int comingFrom, int goingTo){
+        Vertex from = graph.vertex(graph.tail(comingFrom));
+        Vertex intersection = graph.vertex(graph.head[comingFrom]);
+        Vertex to = graph.vertex(graph.head[goingTo]);
 
         return (intersection.getX() - from.getX()) * (to.getY() - from.getY()) - (to.getX() - from.getX()) * (intersection.getY() - from.getY());
     }
     
-    private float dotProduct(DirectedEdge comingFrom, DirectedEdge goingTo){
-        float vectorAx = comingFrom.toVertex().getX() - comingFrom.fromVertex().getX();
-        float vectorAy = comingFrom.toVertex().getY() - comingFrom.fromVertex().getY();
-
-        float vectorBx = goingTo.toVertex().getX() - goingTo.fromVertex().getX();
-        float vectorBy = goingTo.toVertex().getY() - goingTo.fromVertex().getY();
+    private static float dotProduct(Graph graph, int comingFrom, int goingTo){
+        Vertex a = graph.vertex(graph.tail(comingFrom)), b = graph.vertex(graph.head[comingFrom]);
+        Vertex c = graph.vertex(graph.tail(goingTo)), d = graph.vertex(graph.head[goingTo]);
+        float vectorAx = b.getX() - a.getX();
+        float vectorAy = b.getY() - a.getY();
+
+        float vectorBx = d.getX() - c.getX();
+        float vectorBy = d.getY() - c.getY();
 
         return vectorAx * vectorBx + vectorAy * vectorBy;
     }
@@ -0,0 +1,304 @@
+package program.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * Contraction hierarchy of the graph for one metric. Vertices are contracted one at a time, least important
+ * first, and whenever a shortest path ran through a contracted vertex a shortcut edge replaces it between the
+ * neighbours that are left. A vertex's rank is its place in that order, and every shortest path then climbs
+ * to its highest ranked vertex and descends from it, so a route search only has to look upwards from both
+ * ends and settles a few hundred vertices however far apart they are.
+ * Edge ids below edgeCount are edges of the graph; a shortcut is the id edgeCount + i and unpacks into the
+ * two edges it replaces, which may be shortcuts themselves.
+ */
+class ContractionHierarchy {
+    // Vertices settled by a witness search before it gives up and adds the shortcut anyway
+    private static final int WITNESS_LIMIT = 500;
+
+    final int edgeCount;
+    final int[] rank;
+    // Upward graph: the edges from v to higher ranked vertices are firstUp[v] to firstUp[v + 1] - 1
+    final int[] firstUp;
+    final int[] upHead;
+    final float[] upWeight;
+    final int[] upEdge;
+    // Downward graph, reversed: the edges into v from higher ranked vertices
+    final int[] firstDown;
+    final int[] downTail;
+    final float[] downWeight;
+    final int[] downEdge;
+    // Per shortcut: its ends and the edges it replaces, from the tail to the contracted vertex and on to the head
+    final int[] shortcutTail;
+    final int[] shortcutHead;
+    final int[] shortcutFirst;
+    final int[] shortcutSecond;
+
+    ContractionHierarchy(int edgeCount, int[] rank,
+                         int[] firstUp, int[] upHead, float[] upWeight, int[] upEdge,
+                         int[] firstDown, int[] downTail, float[] downWeight, int[] downEdge,
+                         int[] shortcutTail, int[] shortcutHead, int[] shortcutFirst, int[] shortcutSecond) {
+        if (firstUp.length != rank.length + 1 || firstDown.length != rank.length + 1) throw new IllegalArgumentException("Expected " + (rank.length + 1) + " offsets");
+        this.edgeCount = edgeCount;
+        this.rank = rank;
+        this.firstUp = firstUp;
+        this.upHead = upHead;
+        this.upWeight = upWeight;
+        this.upEdge = upEdge;
+        this.firstDown = firstDown;
+        this.downTail = downTail;
+        this.downWeight = downWeight;
+        this.downEdge = downEdge;
+        this.shortcutTail = shortcutTail;
+        this.shortcutHead = shortcutHead;
+        this.shortcutFirst = shortcutFirst;
+        this.shortcutSecond = shortcutSecond;
+    }
+
+    int shortcutCount() {
+        return shortcutTail.length;
+    }
+
+    int tail(Graph graph, int edge) {
+        return edge < edgeCount ? graph.tail(edge) : shortcutTail[edge - edgeCount];
+    }
+
+    int head(Graph graph, int edge) {
+        return edge < edgeCount ? graph.head[edge] : shortcutHead[edge - edgeCount];
+    }
+
+    /**
+     * Adds the edges of the graph an edge of the hierarchy stands for to the path, in order.
+     */
+    void unpack(int edge, Collection<Integer> path) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(edge);
+        while (!stack.isEmpty()) {
+            int e = stack.pop();
+            if (e < edgeCount) {
+                path.add(e);
+                continue;
+            }
+            stack.push(shortcutSecond[e - edgeCount]);
+            stack.push(shortcutFirst[e - edgeCount]);
+        }
+    }
+
+    /**
+     * Contracts the graph for the mode of transport. Vertices are ordered by edge difference, the shortcuts
+     * contracting a vertex adds less the edges it removes, plus the number of its neighbours contracted
+     * already, which spreads the contraction evenly over the map. A shortcut is left out when a witness
+     * search finds a path at most as long that avoids the vertex.
+     */
+    static ContractionHierarchy build(Graph graph, Model.MOT modeOfTransport) {
+        return new Builder(graph, modeOfTransport).build();
+    }
+
+    private static class Builder {
+        private final Graph graph;
+        private final int n;
+        // Edges between vertices not contracted yet, leaving and entering each vertex
+        private final Arcs[] out;
+        private final Arcs[] in;
+        private final int[] contractedNeighbors;
+        private final SearchSpace witness;
+        private int[] shortcutTail = new int[64];
+        private int[] shortcutHead = new int[64];
+        private int[] shortcutFirst = new int[64];
+        private int[] shortcutSecond = new int[64];
+        private int shortcutCount = 0;
+
+        Builder(Graph graph, Model.MOT modeOfTransport) {
+            this.graph = graph;
+            n = graph.vertexCount();
+            out = new Arcs[n];
+            in = new Arcs[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new Arcs();
+                in[v] = new Arcs();
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                    int w = graph.head[e];
+                    float weight = graph.weight(e, modeOfTransport);
+                    if (!graph.isAllowed(e, modeOfTransport) || weight == Float.POSITIVE_INFINITY || w == v) continue;
+                    out[v].put(w, weight, e);
+                    in[w].put(v, weight, e);
+                }
+            }
+            contractedNeighbors = new int[n];
+            witness = new SearchSpace(n);
+        }
+
+        ContractionHierarchy build() {
+            IndexedMinHeap order = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) order.insertOrDecrease(v, priority(v));
+
+            int[] rank = new int[n];
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.poll();
+                // Contracting other vertices may have made v less attractive than the next in line
+                float priority = priority(v);
+                if (!order.isEmpty() && priority > order.peekKey()) {
+                    order.insertOrDecrease(v, priority);
+                    continue;
+                }
+                rank[v] = next++;
+                contract(v, true);
+
+                // The arcs left at v are its edges to higher ranked vertices, the neighbours forget it
+                for (int i = 0; i < out[v].size; i++) in[out[v].vertex[i]].remove(v);
+                for (int i = 0; i < in[v].size; i++) out[in[v].vertex[i]].remove(v);
+                for (int i = 0; i < out[v].size; i++) {
+                    int w = out[v].vertex[i];
+                    contractedNeighbors[w]++;
+                    order.update(w, priority(w));
+                }
+                for (int i = 0; i < in[v].size; i++) {
+                    int u = in[v].vertex[i];
+                    if (out[v].contains(u)) continue;
+                    contractedNeighbors[u]++;
+                    order.update(u, priority(u));
+                }
+            }
+
+            int[] firstUp = new int[n + 1], firstDown = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                firstUp[v + 1] = firstUp[v] + out[v].size;
+                firstDown[v + 1] = firstDown[v] + in[v].size;
+            }
+            int[] upHead = new int[firstUp[n]], upEdge = new int[firstUp[n]];
+            float[] upWeight = new float[firstUp[n]];
+            int[] downTail = new int[firstDown[n]], downEdge = new int[firstDown[n]];
+            float[] downWeight = new float[firstDown[n]];
+            for (int v = 0; v < n; v++) {
+                out[v].copyTo(upHead, upWeight, upEdge, firstUp[v]);
+                in[v].copyTo(downTail, downWeight, downEdge, firstDown[v]);
+            }
+            return new ContractionHierarchy(graph.edgeCount(), rank, firstUp, upHead, upWeight, upEdge, firstDown, downTail, downWeight, downEdge,
+                    Arrays.copyOf(shortcutTail, shortcutCount), Arrays.copyOf(shortcutHead, shortcutCount),
+                    Arrays.copyOf(shortcutFirst, shortcutCount), Arrays.copyOf(shortcutSecond, shortcutCount));
+        }
+
+        private float priority(int v) {
+            return contract(v, false) - in[v].size - out[v].size + contractedNeighbors[v];
+        }
+
+        /**
+         * Finds the shortcuts contracting v needs and adds them if add is set.
+         * @return the number of shortcuts
+         */
+        private int contract(int v, boolean add) {
+            Arcs into = in[v], outOf = out[v];
+            int shortcuts = 0;
+            for (int i = 0; i < into.size; i++) {
+                int u = into.vertex[i];
+                float limit = -1;
+                for (int j = 0; j < outOf.size; j++) {
+                    if (outOf.vertex[j] != u) limit = Math.max(limit, into.weight[i] + outOf.weight[j]);
+                }
+                if (limit < 0) continue;
+
+                searchWitnesses(u, v, limit);
+                for (int j = 0; j < outOf.size; j++) {
+                    int x = outOf.vertex[j];
+                    float via = into.weight[i] + outOf.weight[j];
+                    if (x == u || witness.distTo(x) <= via) continue;
+                    shortcuts++;
+                    if (add) addShortcut(u, x, via, into.edge[i], outOf.edge[j]);
+                }
+            }
+            return shortcuts;
+        }
+
+        // Dijkstra from the source around the skipped vertex, up to the limit or WITNESS_LIMIT settled vertices
+        private void searchWitnesses(int source, int skipped, float limit) {
+            witness.reset();
+            witness.set(source, 0, -1);
+            witness.queue.insertOrDecrease(source, 0);
+            int settled = 0;
+            while (!witness.queue.isEmpty() && settled++ < WITNESS_LIMIT) {
+                int y = witness.queue.poll();
+                float distance = witness.distTo(y);
+                if (distance > limit) break;
+                Arcs arcs = out[y];
+                for (int i = 0; i < arcs.size; i++) {
+                    int z = arcs.vertex[i];
+                    float d = distance + arcs.weight[i];
+                    if (z == skipped || d >= witness.distTo(z)) continue;
+                    witness.set(z, d, -1);
+                    witness.queue.insertOrDecrease(z, d);
+                }
+            }
+        }
+
+        private void addShortcut(int tail, int head, float weight, int first, int second) {
+            if (shortcutCount == shortcutTail.length) {
+                shortcutTail = Arrays.copyOf(shortcutTail, shortcutCount * 2);
+                shortcutHead = Arrays.copyOf(shortcutHead, shortcutCount * 2);
+                shortcutFirst = Arrays.copyOf(shortcutFirst, shortcutCount * 2);
+                shortcutSecond = Arrays.copyOf(shortcutSecond, shortcutCount * 2);
+            }
+            shortcutTail[shortcutCount] = tail;
+            shortcutHead[shortcutCount] = head;
+            shortcutFirst[shortcutCount] = first;
+            shortcutSecond[shortcutCount] = second;
+            int edge = graph.edgeCount() + shortcutCount++;
+            out[tail].put(head, weight, edge);
+            in[head].put(tail, weight, edge);
+        }
+    }
+
+    // The edges of one vertex to its neighbours, keeping only the lightest edge to each
+    private static class Arcs {
+        int[] vertex = new int[2];
+        float[] weight = new float[2];
+        int[] edge = new int[2];
+        int size = 0;
+
+        void put(int v, float w, int e) {
+            for (int i = 0; i < size; i++) {
+                if (vertex[i] != v) continue;
+                if (w < weight[i]) {
+                    weight[i] = w;
+                    edge[i] = e;
+                }
+                return;
+            }
+            if (size == vertex.length) {
+                vertex = Arrays.copyOf(vertex, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                edge = Arrays.copyOf(edge, size * 2);
+            }
+            vertex[size] = v;
+            weight[size] = w;
+            edge[size] = e;
+            size++;
+        }
+
+        boolean contains(int v) {
+            for (int i = 0; i < size; i++) if (vertex[i] == v) return true;
+            return false;
+        }
+
+        void remove(int v) {
+            for (int i = 0; i < size; i++) {
+                if (vertex[i] != v) continue;
+                size--;
+                vertex[i] = vertex[size];
+                weight[i] = weight[size];
+                edge[i] = edge[size];
+                return;
+            }
+        }
+
+        void copyTo(int[] vertices, float[] weights, int[] edges, int offset) {
+            System.arraycopy(vertex, 0, vertices, offset, size);
+            System.arraycopy(weight, 0, weights, offset, size);
+            System.arraycopy(edge, 0, edges, offset, size);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package program.model;
+
+import program.shared.MapRoadSegment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Bidirectional Dijkstra on a contraction hierarchy. The forward search only follows edges up to higher
+ * ranked vertices and the backward search only edges coming down from them, and the route is the shortest
+ * pair meeting at a vertex. Its shortcuts are unpacked into the road segments of the graph.
+ */
+class ContractionHierarchyDijkstra {
+    private final Graph graph;
+    private final ContractionHierarchy hierarchy;
+    private final SearchSpace forward;
+    private final SearchSpace backward;
+    private int settledCount = 0;
+
+    // The vertex where the searches meet on the shortest path found so far
+    private int meeting = -1;
+    float currentShortestPathLength = Float.MAX_VALUE;
+    private final Deque<Integer> edgePath = new ArrayDeque<>();
+
+    /**
+     * Finds the route using the given search spaces, which may not be used by another search at the same time.
+     * @throws IllegalArgumentException if source and destination are the same vertex or no route connects them
+     */
+    ContractionHierarchyDijkstra(Graph graph, ContractionHierarchy hierarchy, int source, int destination, SearchSpace forward, SearchSpace backward) {
+        if (source == destination) throw new IllegalArgumentException("Identical source and destination");
+        if (forward == backward) throw new IllegalArgumentException("The searches need a search space each");
+        if (forward.size() != graph.vertexCount() || backward.size() != graph.vertexCount()) {
+            throw new IllegalArgumentException("Search space does not fit a graph of " + graph.vertexCount() + " vertices");
+        }
+
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+        this.forward = forward;
+        this.backward = backward;
+        forward.reset();
+        backward.reset();
+        forward.set(source, 0, -1);
+        backward.set(destination, 0, -1);
+        forward.queue.insertOrDecrease(source, 0);
+        backward.queue.insertOrDecrease(destination, 0);
+
+        findPath();
+    }
+
+    private void findPath() {
+        boolean forwardTurn = true;
+        while (true) {
+            // A search is done once nothing it has queued can lead to a shorter route
+            boolean forwardOpen = !forward.queue.isEmpty() && forward.queue.peekKey() < currentShortestPathLength;
+            boolean backwardOpen = !backward.queue.isEmpty() && backward.queue.peekKey() < currentShortestPathLength;
+            if (!forwardOpen && !backwardOpen) break;
+
+            if (forwardOpen && (forwardTurn || !backwardOpen)) {
+                settle(forward, backward, hierarchy.firstUp, hierarchy.upHead, hierarchy.upWeight, hierarchy.upEdge,
+                        hierarchy.firstDown, hierarchy.downTail, hierarchy.downWeight);
+            } else {
+                settle(backward, forward, hierarchy.firstDown, hierarchy.downTail, hierarchy.downWeight, hierarchy.downEdge,
+                        hierarchy.firstUp, hierarchy.upHead, hierarchy.upWeight);
+            }
+            forwardTurn = !forwardTurn;
+        }
+
+        if (meeting == -1) throw new IllegalArgumentException("No such path exists");
+        setEdgePath();
+    }
+
+    /**
+     * Settles the next vertex of one search, relaxing the edges given by first, next, weight and edge.
+     * The opposite edges are only read for stall-on-demand: a vertex reached more cheaply from a higher
+     * ranked vertex than by its own search can't be on a shortest route, so its edges are not relaxed.
+     */
+    private void settle(SearchSpace search, SearchSpace opposite, int[] first, int[] next, float[] weight, int[] edge,
+                        int[] stallFirst, int[] stallNext, float[] stallWeight) {
+        int v = search.queue.poll();
+        settledCount++;
+        float distance = search.distTo(v);
+
+        if (opposite.isReached(v) && distance + opposite.distTo(v) < currentShortestPathLength) {
+            currentShortestPathLength = distance + opposite.distTo(v);
+            meeting = v;
+        }
+
+        for (int i = stallFirst[v]; i < stallFirst[v + 1]; i++) {
+            if (search.distTo(stallNext[i]) + stallWeight[i] < distance) return;
+        }
+
+        for (int i = first[v]; i < first[v + 1]; i++) {
+            int w = next[i];
+            float d = distance + weight[i];
+            if (d >= search.distTo(w)) continue;
+            search.set(w, d, edge[i]);
+            search.queue.insertOrDecrease(w, d);
+        }
+    }
+
+    private void setEdgePath() {
+        Deque<Integer> hierarchyPath = new ArrayDeque<>();
+        for (int v = meeting, e = forward.edgeTo(v); e != -1; v = hierarchy.tail(graph, e), e = forward.edgeTo(v)) {
+            hierarchyPath.push(e);
+        }
+        for (int v = meeting, e = backward.edgeTo(v); e != -1; v = hierarchy.head(graph, e), e = backward.edgeTo(v)) {
+            hierarchyPath.add(e);
+        }
+        for (int e : hierarchyPath) hierarchy.unpack(e, edgePath);
+    }
+
+    int getSettledCount() {
+        return settledCount;
+    }
+
+    List<MapRoadSegment> getPath() {
+        return BiDirectionalDijkstra.getPath(graph, edgePath);
+    }
+
+    Iterable<String> getInstructions() {
+        return BiDirectionalDijkstra.getInstructions(graph, edgePath);
+    }
+}
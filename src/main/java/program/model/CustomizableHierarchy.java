@@ -0,0 +1,298 @@
+package program.model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The metric independent part of a customizable contraction hierarchy. The vertex order comes from the
+ * shape of the map alone: it is cut in two along the median of its longer side, the vertices along the cut
+ * are ranked above both halves, and the halves are cut the same way. Contracting in that order without
+ * witness searches gives the arcs, every pair of vertices a shortest path could need a shortcut between
+ * for any metric.
+ * Customizing fills in the weights of the arcs for one metric and gives an ordinary ContractionHierarchy.
+ * Customizing goes upwards level by level, and the vertices of a level are customized in parallel.
+ */
+class CustomizableHierarchy {
+    // Cells this small are not cut any further
+    private static final int CELL_SIZE = 8;
+
+    final int[] rank;
+    // The arcs from v to its higher ranked neighbours are firstArc[v] to firstArc[v + 1] - 1, by rank
+    final int[] firstArc;
+    final int[] arcHead;
+
+    // Derived from the above when loaded
+    private final int edgeCount;
+    private final int[] edgeArc; // The arc between the ends of each edge of the graph
+    private final int[] firstLower; // The arcs into v from lower ranked neighbours are lowerArc[firstLower[v]] and on
+    private final int[] lowerArc;
+    private final int[] firstLevel; // Vertices with all lower neighbours in earlier levels, levelVertices[firstLevel[l]] and on
+    private final int[] levelVertices;
+    private final int[] shortcutTail; // Per arc direction: upwards at 2 * arc, downwards at 2 * arc + 1
+    private final int[] shortcutHead;
+
+    CustomizableHierarchy(Graph graph, int[] rank, int[] firstArc, int[] arcHead) {
+        int n = graph.vertexCount(), arcs = arcHead.length;
+        if (rank.length != n || firstArc.length != n + 1) throw new IllegalArgumentException("Hierarchy does not fit a graph of " + n + " vertices");
+        this.rank = rank;
+        this.firstArc = firstArc;
+        this.arcHead = arcHead;
+        edgeCount = graph.edgeCount();
+
+        shortcutTail = new int[2 * arcs];
+        shortcutHead = new int[2 * arcs];
+        firstLower = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int arc = firstArc[v]; arc < firstArc[v + 1]; arc++) {
+                shortcutTail[2 * arc] = shortcutHead[2 * arc + 1] = v;
+                shortcutHead[2 * arc] = shortcutTail[2 * arc + 1] = arcHead[arc];
+                firstLower[arcHead[arc] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) firstLower[v + 1] += firstLower[v];
+        lowerArc = new int[arcs];
+        int[] next = Arrays.copyOf(firstLower, n);
+        for (int v = 0; v < n; v++) {
+            for (int arc = firstArc[v]; arc < firstArc[v + 1]; arc++) lowerArc[next[arcHead[arc]]++] = arc;
+        }
+
+        edgeArc = new int[edgeCount];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                int w = graph.head[e];
+                edgeArc[e] = v == w ? -1 : rank[v] < rank[w] ? findArc(v, w) : findArc(w, v);
+            }
+        }
+
+        // Levels in rank order, as lower neighbours have lower ranks
+        int[] byRank = new int[n];
+        for (int v = 0; v < n; v++) byRank[rank[v]] = v;
+        int[] level = new int[n];
+        int levels = 0;
+        for (int v : byRank) {
+            for (int arc = firstArc[v]; arc < firstArc[v + 1]; arc++) level[arcHead[arc]] = Math.max(level[arcHead[arc]], level[v] + 1);
+            levels = Math.max(levels, level[v] + 1);
+        }
+        firstLevel = new int[levels + 1];
+        for (int v = 0; v < n; v++) firstLevel[level[v] + 1]++;
+        for (int l = 0; l < levels; l++) firstLevel[l + 1] += firstLevel[l];
+        levelVertices = new int[n];
+        int[] nextInLevel = Arrays.copyOf(firstLevel, levels);
+        for (int v = 0; v < n; v++) levelVertices[nextInLevel[level[v]]++] = v;
+    }
+
+    // The arc from low to high, by binary search on rank
+    private int findArc(int low, int high) {
+        int from = firstArc[low], to = firstArc[low + 1] - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            int r = rank[arcHead[mid]];
+            if (r < rank[high]) from = mid + 1;
+            else if (r > rank[high]) to = mid - 1;
+            else return mid;
+        }
+        throw new IllegalStateException("No arc between " + low + " and " + high);
+    }
+
+    int arcCount() {
+        return arcHead.length;
+    }
+
+    /**
+     * Orders the graph by nested dissection and finds the arcs of contracting it in that order.
+     */
+    static CustomizableHierarchy build(Graph graph) {
+        int n = graph.vertexCount();
+        int[] rank = new int[n];
+        int[] vertices = new int[n];
+        for (int v = 0; v < n; v++) vertices[v] = v;
+        dissect(graph, vertices, 0, n, rank, new int[n], new int[]{ 0 });
+
+        int[] byRank = new int[n];
+        for (int v = 0; v < n; v++) byRank[rank[v]] = v;
+
+        // Upper neighbours by rank, contracting a vertex joins them all to the lowest of them
+        int[][] upper = new int[n][];
+        int[] count = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                int w = graph.head[e];
+                if (w != v) count[Math.min(rank[v], rank[w])]++;
+            }
+        }
+        for (int r = 0; r < n; r++) upper[r] = new int[count[r]];
+        Arrays.fill(count, 0);
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                int w = graph.head[e];
+                if (w == v) continue;
+                int low = Math.min(rank[v], rank[w]);
+                upper[low][count[low]++] = Math.max(rank[v], rank[w]);
+            }
+        }
+        for (int r = 0; r < n; r++) upper[r] = distinct(upper[r]);
+        for (int r = 0; r < n; r++) {
+            int[] neighbours = upper[r];
+            if (neighbours.length < 2) continue;
+            int lowest = neighbours[0];
+            upper[lowest] = union(upper[lowest], neighbours, 1);
+        }
+
+        int[] firstArc = new int[n + 1];
+        for (int v = 0; v < n; v++) firstArc[v + 1] = firstArc[v] + upper[rank[v]].length;
+        int[] arcHead = new int[firstArc[n]];
+        for (int v = 0; v < n; v++) {
+            int[] neighbours = upper[rank[v]];
+            for (int i = 0; i < neighbours.length; i++) arcHead[firstArc[v] + i] = byRank[neighbours[i]];
+        }
+        return new CustomizableHierarchy(graph, rank, firstArc, arcHead);
+    }
+
+    /**
+     * Ranks the vertices[from] to vertices[to - 1] with the ranks next[0] and on, the vertices on the cut
+     * through them last. The side array marks the halves while the cut is found.
+     */
+    private static void dissect(Graph graph, int[] vertices, int from, int to, int[] rank, int[] side, int[] next) {
+        int size = to - from;
+        if (size <= CELL_SIZE) {
+            for (int i = from; i < to; i++) rank[vertices[i]] = next[0]++;
+            return;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            Vertex v = graph.vertices[vertices[i]];
+            minX = Math.min(minX, v.getX());
+            maxX = Math.max(maxX, v.getX());
+            minY = Math.min(minY, v.getY());
+            maxY = Math.max(maxY, v.getY());
+        }
+        boolean byX = maxX - minX >= maxY - minY;
+        Integer[] cell = new Integer[size];
+        for (int i = 0; i < size; i++) cell[i] = vertices[from + i];
+        Arrays.sort(cell, (a, b) -> byX ? Float.compare(graph.vertices[a].getX(), graph.vertices[b].getX())
+                : Float.compare(graph.vertices[a].getY(), graph.vertices[b].getY()));
+
+        // The vertices of one half with a neighbour in the other make up the cut, from whichever half has fewer
+        int mid = size / 2;
+        for (int i = 0; i < size; i++) side[cell[i]] = i < mid ? 1 : 2;
+        boolean[] boundary = new boolean[size];
+        int firstBoundary = 0, secondBoundary = 0;
+        for (int i = 0; i < size; i++) {
+            boundary[i] = touches(graph, cell[i], side, i < mid ? 2 : 1);
+            if (boundary[i] && i < mid) firstBoundary++;
+            else if (boundary[i]) secondBoundary++;
+        }
+        boolean cutFirst = firstBoundary <= secondBoundary;
+        int low = from, high = to;
+        for (int i = 0; i < size; i++) {
+            if (boundary[i] && (i < mid) == cutFirst) vertices[--high] = cell[i];
+            else vertices[low++] = cell[i];
+        }
+        for (int i = 0; i < size; i++) side[cell[i]] = 0;
+        int cut = high;
+
+        int firstHalf = from + mid - (cutFirst ? firstBoundary : 0);
+        dissect(graph, vertices, from, firstHalf, rank, side, next);
+        dissect(graph, vertices, firstHalf, cut, rank, side, next);
+        for (int i = cut; i < to; i++) rank[vertices[i]] = next[0]++;
+    }
+
+    private static boolean touches(Graph graph, int v, int[] side, int other) {
+        for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) if (side[graph.head[e]] == other) return true;
+        for (int i = graph.firstIn[v]; i < graph.firstIn[v + 1]; i++) if (side[graph.tail[i]] == other) return true;
+        return false;
+    }
+
+    private static int[] distinct(int[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) if (size == 0 || values[i] != values[size - 1]) values[size++] = values[i];
+        return Arrays.copyOf(values, size);
+    }
+
+    // The sorted union of a and b[from] and on, both sorted
+    private static int[] union(int[] a, int[] b, int from) {
+        int[] union = new int[a.length + b.length - from];
+        int i = 0, j = from, size = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || i < a.length && a[i] < b[j]) union[size++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) union[size++] = b[j++];
+            else {
+                union[size++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(union, size);
+    }
+
+    /**
+     * Weighs every arc in both directions by the metric. An arc starts as the lightest edge of the graph
+     * between its ends, and for every triangle below it, from the arc's lower end down to a lower vertex
+     * and up to its higher end, is lowered to the path through the triangle if that is lighter, which makes
+     * it a shortcut for the two arcs.
+     */
+    ContractionHierarchy customize(Graph graph, Metric metric) {
+        int n = rank.length, arcs = arcHead.length;
+        float[] up = new float[arcs], down = new float[arcs];
+        int[] upEdge = new int[arcs], downEdge = new int[arcs];
+        Arrays.fill(up, Float.POSITIVE_INFINITY);
+        Arrays.fill(down, Float.POSITIVE_INFINITY);
+        Arrays.fill(upEdge, -1);
+        Arrays.fill(downEdge, -1);
+        int[] shortcutFirst = new int[2 * arcs], shortcutSecond = new int[2 * arcs];
+
+        // An arc direction is only written by the edges leaving one of its ends, so the vertices can go in parallel
+        IntStream.range(0, n).parallel().forEach(v -> {
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                int arc = edgeArc[e];
+                if (arc == -1) continue;
+                float weight = metric.weight(graph, e);
+                boolean upwards = rank[v] < rank[graph.head[e]];
+                float[] weights = upwards ? up : down;
+                if (weight >= weights[arc]) continue;
+                weights[arc] = weight;
+                (upwards ? upEdge : downEdge)[arc] = e;
+            }
+        });
+
+        // A vertex only reads arcs of lower levels and only writes its own
+        for (int l = 0; l + 1 < firstLevel.length; l++) {
+            IntStream.range(firstLevel[l], firstLevel[l + 1]).parallel().forEach(i -> {
+                int a = levelVertices[i];
+                for (int j = firstLower[a]; j < firstLower[a + 1]; j++) {
+                    int lower = lowerArc[j]; // From v up to a
+                    int v = shortcutTail[2 * lower];
+                    // Heads above a among the arcs of both v and a, which are sorted by rank
+                    int vArc = lower + 1, aArc = firstArc[a];
+                    while (vArc < firstArc[v + 1] && aArc < firstArc[a + 1]) {
+                        int vRank = rank[arcHead[vArc]], aRank = rank[arcHead[aArc]];
+                        if (vRank < aRank) vArc++;
+                        else if (vRank > aRank) aArc++;
+                        else {
+                            float upwards = down[lower] + up[vArc], downwards = down[vArc] + up[lower];
+                            if (upwards < up[aArc]) {
+                                up[aArc] = upwards;
+                                upEdge[aArc] = edgeCount + 2 * aArc;
+                                shortcutFirst[2 * aArc] = downEdge[lower];
+                                shortcutSecond[2 * aArc] = upEdge[vArc];
+                            }
+                            if (downwards < down[aArc]) {
+                                down[aArc] = downwards;
+                                downEdge[aArc] = edgeCount + 2 * aArc + 1;
+                                shortcutFirst[2 * aArc + 1] = downEdge[vArc];
+                                shortcutSecond[2 * aArc + 1] = upEdge[lower];
+                            }
+                            vArc++;
+                            aArc++;
+                        }
+                    }
+                }
+            });
+        }
+
+        // Arcs stored at their lower end are both the upward and the reversed downward graph
+        return new ContractionHierarchy(edgeCount, rank, firstArc, arcHead, up, upEdge, firstArc, arcHead, down, downEdge,
+                shortcutTail, shortcutHead, shortcutFirst, shortcutSecond);
+    }
+}
@@ -17,42 +17,130 @@ public class DataParser{
 
     private static AddressBook addressBook;
     private static TreeStorage treeStorage;
-    private static List<DirectedEdge> edges;
+    private static Graph.Builder graph;
 
-    public static TreeStorage parse(String fileName, AddressBook _addressBook, List<DirectedEdge> _edges) throws IOException, XMLStreamException, ClassNotFoundException {
+    public static TreeStorage parse(String fileName, AddressBook _addressBook) throws IOException, XMLStreamException, ClassNotFoundException {
+        return parse(fileName, _addressBook, false);
+    }
+
+    /**
+     * Parses an .osm or .zip file.
+     * When filterReferencedNodes is set the file is read twice: the first pass collects the ids of all nodes
+     * used by a way we draw or route on, and the second pass only keeps those nodes (plus address nodes).
+     * This makes memory scale with the mapped features instead of with the size of the extract.
+     */
+    public static TreeStorage parse(String fileName, AddressBook _addressBook, boolean filterReferencedNodes) throws IOException, XMLStreamException, ClassNotFoundException {
         treeStorage = new TreeStorage();
-        edges = _edges;
+        graph = new Graph.Builder();
         addressBook = _addressBook;
-        if (fileName.endsWith(".zip")) {
-            parseZip(fileName);
-        } else if (fileName.endsWith(".osm")) {
-            parseOSM(fileName);
+        if (!fileName.endsWith(".zip") && !fileName.endsWith(".osm")) return treeStorage;
+
+        if (filterReferencedNodes) {
+            try (InputStream input = openInput(fileName)) {
+                referencedNodes = collectReferencedNodes(input);
+            }
         }
+        try (InputStream input = openInput(fileName)) {
+            parseOSM(input);
+        }
+        referencedNodes = null;
+        treeStorage.setGraph(graph.build());
+        graph = null;
+        // Selecting the ALT landmarks takes a few searches over the whole graph, do it once here and keep them with the map
+        treeStorage.getLandmarks();
+        // Contracting the graph is slow, so it happens at import rather than when the first route is planned
+        for (int metric = 0; metric < Graph.METRICS; metric++) treeStorage.getContractionHierarchy(metric);
+        treeStorage.getCustomizableHierarchy();
 
         return treeStorage;
     }
 
-    private static void parseZip(String fileName) throws IOException, XMLStreamException {
-        var input = new ZipInputStream(new FileInputStream(fileName));
-        input.getNextEntry();
-        parseOSM(input);
+    private static InputStream openInput(String fileName) throws IOException {
+        if (fileName.endsWith(".zip")) {
+            var input = new ZipInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+            input.getNextEntry();
+            return input;
+        }
+        return new BufferedInputStream(new FileInputStream(fileName));
+    }
+
+    // First pass of the two-pass import: only looks at ways and remembers the nodes of the ones we keep.
+    private static NodeIdSet collectReferencedNodes(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader input = XMLInputFactory.newInstance().createXMLStreamReader(new InputStreamReader(inputStream));
+        NodeIdSet referenced = new NodeIdSet();
+
+        long[] wayPoints = new long[64];
+        int wayPointCount = 0;
+        boolean inWay = false;
+        boolean keepWay = false;
+        boolean skipWay = false;
+
+        while (input.hasNext()) {
+            int tagKind = input.next();
+            if (tagKind == XMLStreamConstants.START_ELEMENT) {
+                switch (input.getLocalName()) {
+                    case "way" -> {
+                        inWay = true;
+                        keepWay = false;
+                        skipWay = false;
+                        wayPointCount = 0;
+                    }
+                    case "nd" -> {
+                        if (wayPointCount == wayPoints.length) wayPoints = Arrays.copyOf(wayPoints, wayPointCount * 2);
+                        wayPoints[wayPointCount++] = Long.parseLong(input.getAttributeValue(null, "ref"));
+                    }
+                    case "tag" -> {
+                        if (inWay) {
+                            String tagKey = input.getAttributeValue(null, "k");
+                            String tagValue = input.getAttributeValue(null, "v");
+                            if (isSkippedWayTag(tagKey, tagValue)) skipWay = true;
+                            else if (isMappedWayTag(tagKey, tagValue)) keepWay = true;
+                        }
+                    }
+                }
+            } else if (tagKind == XMLStreamConstants.END_ELEMENT && input.getLocalName().equals("way")) {
+                if (keepWay && !skipWay) {
+                    for (int i = 0; i < wayPointCount; i++) referenced.add(wayPoints[i]);
+                }
+                inWay = false;
+            }
+        }
+        input.close();
+
+        referenced.seal();
+        return referenced;
+    }
+
+    // Ways with such a tag are left out by both passes
+    private static boolean isSkippedWayTag(String tagKey, String tagValue) {
+        return tagKey.equals("access") && tagValue.equals("no");
     }
 
-    private static void parseOSM(String fileName) throws FileNotFoundException, XMLStreamException {
-        parseOSM(new FileInputStream(fileName));
+    // Must match the tags that make parseOSM create an element for a way
+    private static boolean isMappedWayTag(String tagKey, String tagValue) {
+        return switch (tagKey) {
+            case "highway", "cycleway", "footpath", "footway" -> true;
+            case "natural" -> tagValue.equals("coastline");
+            case "building" -> tagValue.equals("yes");
+            default -> false;
+        };
     }
 
 
-    private static List<Point> nodes;
+    private static NodeTable nodes;
+    private static NodeIdSet referencedNodes;
     private static void parseOSM(InputStream inputStream) throws XMLStreamException {
         XMLStreamReader input = XMLInputFactory.newInstance().createXMLStreamReader(new InputStreamReader(inputStream));
 
-        nodes = new ArrayList<>(15_000_000);
+        nodes = new NodeTable(referencedNodes == null ? 15_000_000 : referencedNodes.size());
+        // Every element is known up front, so the R-trees are packed once at the end instead of insert by insert
+        treeStorage.startBulkLoad();
 
         AddressBuilder builder = new AddressBuilder();
         boolean insertAddress = false;
         boolean readingNodes = true;
-        Point currentNode = null;
+        long currentId = 0;
+        float currentX = 0, currentY = 0;
 
         int tagKind = -1;
 
@@ -66,8 +154,10 @@ public class DataParser{
                         var lat = Float.parseFloat(input.getAttributeValue(null, "lat"));
                         var lon = Float.parseFloat(input.getAttributeValue(null, "lon"));
 
-                        currentNode = new Point(0.56F * lon, lat, id);
-                        nodes.add(currentNode);
+                        currentId = id;
+                        currentX = 0.56F * lon;
+                        currentY = lat;
+                        if (referencedNodes == null || referencedNodes.contains(id)) nodes.add(currentId, currentX, currentY);
                     }
                     case "tag" -> {
                         var tagKey = input.getAttributeValue(null, "k");
@@ -99,7 +189,7 @@ public class DataParser{
                     if (insertAddress) {
                         addressBook.addAddress(
                                 builder.build(),
-                                currentNode
+                                new Point(currentX, currentY, currentId)
                         );
                         insertAddress = false;
                     }
@@ -108,7 +198,7 @@ public class DataParser{
         }
 
         // sorting nodes by id, to binary-search later
-        Collections.sort(nodes, Comparator.comparingLong(Point::getId));
+        nodes.seal();
 
         List<Long> wayPoints = new ArrayList<>();
         boolean isRoad = false;
@@ -192,11 +282,6 @@ public class DataParser{
                                 subType = "footpath";
                                 roadName = "Footpath";
                             }
-                            case "access" -> {
-                                if (tagValue.equals("no")){
-                                    skipElement = true;
-                                }
-                            }
                             case "natural" -> {
                                 if (tagValue.equals("coastline")) {
                                     isElement = true;
@@ -218,6 +303,7 @@ public class DataParser{
                             }
                             // Todo: Add other map elements to draw here
                         }
+                        if (isSkippedWayTag(tagKey, tagValue)) skipElement = true;
                         if (isRoad && tagKey.equals("name")) {
                             roadName = tagValue.intern();
                         }
@@ -226,29 +312,27 @@ public class DataParser{
             } else if (tagKind == XMLStreamConstants.END_ELEMENT) {
                 String tag = input.getLocalName();
                 if (tag.equals("way")) {
-                    if (skipElement) {skipElement = false; continue;}
-                    if (isRoad) {
-                        Vertex prev = null;
-                        for (Long id : wayPoints) {
-                            int nodeIndex = findNodeIndex(id);
-
-                            if (!(nodes.get(nodeIndex) instanceof Vertex)) {
-                                nodes.set(nodeIndex, new Vertex(nodes.get(nodeIndex).getX(), nodes.get(nodeIndex).getY(), id));
-                            }
-
-                            Vertex current = (Vertex) nodes.get(nodeIndex);
-                            if (prev == null) prev = current;
-                            else {
-                                treeStorage.insert(
-                                        createSegment(prev, current, roadName, subType, speed, oneway, carAllowed, onlyCarAllowed), type
-                                );
-                                prev = current;
+                    // The first pass didn't keep the nodes of a skipped way, so it must not be built either
+                    if (!skipElement) {
+                        if (isRoad) {
+                            // The way is drawn as one polyline, its segments are only kept for routing and nearest road
+                            if (wayPoints.size() >= 2) treeStorage.insert(createPath(wayPoints, subType), type);
+                            Vertex prev = null;
+                            for (Long id : wayPoints) {
+                                Vertex current = nodes.materializeVertex(nodes.indexOf(id));
+                                if (prev == null) prev = current;
+                                else {
+                                    treeStorage.insertRoadSegment(
+                                            createSegment(prev, current, roadName, subType, speed, oneway, carAllowed, onlyCarAllowed)
+                                    );
+                                    prev = current;
+                                }
                             }
+                        } else if (isElement) {
+                            treeStorage.insert(createPath(wayPoints, subType), type);
+                        } else if (isFillableElement) {
+                            treeStorage.insert(createFillable(wayPoints, subType), type);
                         }
-                    } else if (isElement) {
-                        treeStorage.insert(createPath(wayPoints, subType), type);
-                    } else if (isFillableElement) {
-                        treeStorage.insert(createFillable(wayPoints, subType), type);
                     }
                     wayPoints.clear();
                     isRoad = false;
@@ -257,6 +341,7 @@ public class DataParser{
                     carAllowed = true;
                     onlyCarAllowed = false;
                     isFillableElement = false;
+                    skipElement = false;
                     type = null;
                     subType = null;
                     speed = 80;
@@ -265,28 +350,17 @@ public class DataParser{
             if (input.hasNext()) tagKind = input.next();
         }
         input.close();
-    }
-
-    // O(lg2(n))
-    private static int findNodeIndex(long nodeId) {
-        int low = 0;
-        int high = nodes.size() - 1;
-        while (low <= high) {
-            int middle = low + (high - low) / 2;
-            if      (nodeId < nodes.get(middle).getId()) high = middle - 1;
-            else if (nodeId > nodes.get(middle).getId()) low = middle + 1;
-            else {
-                return middle;
-            }
-        }
-        return -1;
+        nodes = null;
+        treeStorage.finishBulkLoad();
     }
 
     private static MapPath createPath(List<Long> ids, String type) {
         MapPath path = new MapPath(type, ids.size());
         for (Long id : ids){
-            path.add(nodes.get(findNodeIndex(id)));
+            int nodeIndex = nodes.indexOf(id);
+            path.add(nodes.getX(nodeIndex), nodes.getY(nodeIndex));
         }
+        path.simplify();
 
         return path;
     }
@@ -294,8 +368,10 @@ public class DataParser{
     private static MapFillable createFillable(List<Long> ids, String type) {
         MapFillable fillable = new MapFillable(type, ids.size());
         for (Long id : ids){
-            fillable.add(nodes.get(findNodeIndex(id)));
+            int nodeIndex = nodes.indexOf(id);
+            fillable.add(nodes.getX(nodeIndex), nodes.getY(nodeIndex));
         }
+        fillable.simplify();
 
         return fillable;
     }
@@ -305,20 +381,8 @@ public class DataParser{
 
         float carWeight = segment.getDistance()/speed;
 
-        DirectedEdge forward = new DirectedEdge(a, b, carWeight, segment);
-        edges.add(forward);
-        a.addOutEdge(forward);
-        b.addInEdge(forward);
-
-        DirectedEdge backward;
-        if (oneway) {
-            backward = new DirectedEdge(b, a, Float.POSITIVE_INFINITY, segment);
-        } else {
-            backward = new DirectedEdge(b, a, carWeight, segment);
-        }
-        edges.add(backward);
-        a.addInEdge(backward);
-        b.addOutEdge(backward);
+        graph.addEdge(a, b, carWeight, segment);
+        graph.addEdge(b, a, oneway ? Float.POSITIVE_INFINITY : carWeight, segment);
 
         return segment;
     }
@@ -0,0 +1,132 @@
+package program.model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many distances on a contraction hierarchy with buckets. A backward upward search from every target
+ * leaves the target and its distance in a bucket at each vertex it settles, and a forward upward search from
+ * every source reads the buckets of the vertices it settles, as every shortest path meets at its highest
+ * vertex. An N by M matrix thereby costs N + M searches instead of N * M, and the searches of each side run
+ * in parallel.
+ */
+class DistanceMatrix {
+    private DistanceMatrix() {}
+
+    /**
+     * The distance from every source to every target, infinite where no route connects them. Sources and
+     * targets of -1 stand for points without a vertex and are infinitely far from everything.
+     * @param borrow gives a search space for one search, which is handed back to giveBack after it
+     */
+    static float[][] compute(ContractionHierarchy hierarchy, int[] sources, int[] targets,
+                             Supplier<SearchSpace> borrow, Consumer<SearchSpace> giveBack) {
+        int n = hierarchy.rank.length;
+
+        Settled[] fromTargets = new Settled[targets.length];
+        IntStream.range(0, targets.length).parallel().forEach(j -> {
+            if (targets[j] < 0) {
+                fromTargets[j] = new Settled();
+                return;
+            }
+            SearchSpace space = borrow.get();
+            try {
+                fromTargets[j] = search(targets[j], space, hierarchy.firstDown, hierarchy.downTail, hierarchy.downWeight,
+                        hierarchy.firstUp, hierarchy.upHead, hierarchy.upWeight);
+            } finally {
+                giveBack.accept(space);
+            }
+        });
+
+        // The buckets of vertex v are bucketTarget[firstBucket[v]] to bucketTarget[firstBucket[v + 1] - 1]
+        int[] firstBucket = new int[n + 1];
+        for (Settled settled : fromTargets) for (int i = 0; i < settled.size; i++) firstBucket[settled.vertices[i] + 1]++;
+        for (int v = 0; v < n; v++) firstBucket[v + 1] += firstBucket[v];
+        int[] bucketTarget = new int[firstBucket[n]];
+        float[] bucketDistance = new float[firstBucket[n]];
+        int[] next = Arrays.copyOf(firstBucket, n);
+        for (int j = 0; j < targets.length; j++) {
+            Settled settled = fromTargets[j];
+            for (int i = 0; i < settled.size; i++) {
+                int k = next[settled.vertices[i]]++;
+                bucketTarget[k] = j;
+                bucketDistance[k] = settled.distances[i];
+            }
+        }
+
+        float[][] matrix = new float[sources.length][targets.length];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            float[] row = matrix[i];
+            Arrays.fill(row, Float.POSITIVE_INFINITY);
+            if (sources[i] < 0) return;
+            SearchSpace space = borrow.get();
+            Settled fromSource;
+            try {
+                fromSource = search(sources[i], space, hierarchy.firstUp, hierarchy.upHead, hierarchy.upWeight,
+                        hierarchy.firstDown, hierarchy.downTail, hierarchy.downWeight);
+            } finally {
+                giveBack.accept(space);
+            }
+            for (int s = 0; s < fromSource.size; s++) {
+                int v = fromSource.vertices[s];
+                for (int k = firstBucket[v]; k < firstBucket[v + 1]; k++) {
+                    row[bucketTarget[k]] = Math.min(row[bucketTarget[k]], fromSource.distances[s] + bucketDistance[k]);
+                }
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Dijkstra over the edges given by first, next and weight until the queue runs out, with the same
+     * stall-on-demand as ContractionHierarchyDijkstra. Stalled vertices are left out of the result, as no
+     * shortest path meets there.
+     */
+    private static Settled search(int source, SearchSpace space, int[] first, int[] next, float[] weight,
+                                  int[] stallFirst, int[] stallNext, float[] stallWeight) {
+        Settled settled = new Settled();
+        space.reset();
+        space.set(source, 0, -1);
+        space.queue.insertOrDecrease(source, 0);
+        while (!space.queue.isEmpty()) {
+            int v = space.queue.poll();
+            float distance = space.distTo(v);
+            if (isStalled(space, v, distance, stallFirst, stallNext, stallWeight)) continue;
+            settled.add(v, distance);
+
+            for (int i = first[v]; i < first[v + 1]; i++) {
+                int w = next[i];
+                float d = distance + weight[i];
+                if (d >= space.distTo(w)) continue;
+                space.set(w, d, -1);
+                space.queue.insertOrDecrease(w, d);
+            }
+        }
+        return settled;
+    }
+
+    private static boolean isStalled(SearchSpace space, int v, float distance, int[] stallFirst, int[] stallNext, float[] stallWeight) {
+        for (int i = stallFirst[v]; i < stallFirst[v + 1]; i++) {
+            if (space.distTo(stallNext[i]) + stallWeight[i] < distance) return true;
+        }
+        return false;
+    }
+
+    // The vertices a search settled and their distances
+    private static class Settled {
+        int[] vertices = new int[64];
+        float[] distances = new float[64];
+        int size = 0;
+
+        void add(int v, float distance) {
+            if (size == vertices.length) {
+                vertices = Arrays.copyOf(vertices, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            vertices[size] = v;
+            distances[size] = distance;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package program.model;
+
+import program.shared.*;
+
+import java.util.*;
+
+/**
+ * Builds the generalized geometry drawn at country-level zoom. Lines that meet end to end are chained into
+ * long polylines, which are then simplified with Douglas-Peucker, so a LOW detail frame draws a few hundred
+ * long paths instead of every coastline way and road segment.
+ */
+class Generalizer {
+    // A pixel at LOW detail (zoom at most 2500) is at least 0.0004 map units, half of that is never visible
+    static final float TOLERANCE = 0.0002F;
+
+    /**
+     * Chains the coastline ways and simplifies the result.
+     */
+    static List<MapPath> generalizePaths(List<MapElement> paths, String type) {
+        List<float[]> pieces = new ArrayList<>();
+        for (MapElement e : paths) {
+            if (e instanceof MapPath path && path.getPoints().length >= 4) pieces.add(path.getPoints());
+        }
+        return toPaths(chain(pieces), type);
+    }
+
+    /**
+     * Chains roads into polylines wherever exactly two pieces meet, ignoring names and direction.
+     * The roads are the polylines of whole ways, or single segments for storages filled segment by segment.
+     */
+    static List<MapPath> generalizeRoads(List<MapElement> roads, String type) {
+        List<float[]> pieces = new ArrayList<>();
+        for (MapElement e : roads) {
+            if (e instanceof MapPath path && path.getPoints().length >= 4) {
+                pieces.add(path.getPoints());
+            } else if (e instanceof MapRoadSegment segment) {
+                pieces.add(new float[]{ segment.getVertexA().getX(), segment.getVertexA().getY(),
+                        segment.getVertexB().getX(), segment.getVertexB().getY() });
+            }
+        }
+        return toPaths(chain(pieces), type);
+    }
+
+    private static List<MapPath> toPaths(List<float[]> lines, String type) {
+        List<MapPath> paths = new ArrayList<>(lines.size());
+        for (float[] line : lines) {
+            float[] points = LevelOfDetail.simplify(line, false, TOLERANCE);
+            MapPath path = new MapPath(type, points.length / 2);
+            for (int i = 0; i < points.length; i += 2) path.add(points[i], points[i + 1]);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Joins pieces that share an end point with no other piece into one line. Chains start at end points
+     * where any other number of pieces meet, pieces left over after that form closed rings.
+     * @param pieces x, y pairs of every piece, at least two points each
+     */
+    static List<float[]> chain(List<float[]> pieces) {
+        // End point -> pieces ending there, stored as piece index * 2 (+ 1 when it is the last point)
+        Map<Long, List<Integer>> ends = new HashMap<>();
+        for (int i = 0; i < pieces.size(); i++) {
+            float[] piece = pieces.get(i);
+            ends.computeIfAbsent(key(piece[0], piece[1]), k -> new ArrayList<>(2)).add(2 * i);
+            ends.computeIfAbsent(key(piece[piece.length - 2], piece[piece.length - 1]), k -> new ArrayList<>(2)).add(2 * i + 1);
+        }
+
+        boolean[] used = new boolean[pieces.size()];
+        List<float[]> lines = new ArrayList<>();
+        for (boolean ringsOnly : new boolean[]{ false, true }) {
+            for (int i = 0; i < pieces.size(); i++) {
+                if (used[i]) continue;
+                float[] piece = pieces.get(i);
+                boolean startIsEnd = ends.get(key(piece[0], piece[1])).size() != 2;
+                boolean lastIsEnd = ends.get(key(piece[piece.length - 2], piece[piece.length - 1])).size() != 2;
+                if (!ringsOnly && !startIsEnd && !lastIsEnd) continue;
+                lines.add(follow(pieces, ends, used, i, !startIsEnd && lastIsEnd));
+            }
+        }
+        return lines;
+    }
+
+    // Walks from one end of the piece through every point where exactly two pieces meet
+    private static float[] follow(List<float[]> pieces, Map<Long, List<Integer>> ends, boolean[] used, int first, boolean reversed) {
+        FloatList line = new FloatList();
+        int current = first;
+        while (true) {
+            used[current] = true;
+            float[] piece = pieces.get(current);
+            line.append(piece, reversed, line.size() > 0);
+            float x = line.get(line.size() - 2), y = line.get(line.size() - 1);
+
+            List<Integer> meeting = ends.get(key(x, y));
+            if (meeting.size() != 2) break;
+            int next = meeting.get(0) / 2 == current && meeting.get(0) % 2 == (reversed ? 0 : 1) ? meeting.get(1) : meeting.get(0);
+            if (used[next / 2]) break;
+            current = next / 2;
+            // Continue from the end of the next piece that touches the line
+            reversed = next % 2 == 1;
+        }
+        return line.toArray();
+    }
+
+    private static long key(float x, float y) {
+        return ((long) Float.floatToIntBits(x) << 32) | (Float.floatToIntBits(y) & 0xFFFFFFFFL);
+    }
+
+    private static class FloatList {
+        private float[] values = new float[16];
+        private int size;
+
+        // Adds the points of the piece, leaving out its first point when it is the end of the line already
+        void append(float[] piece, boolean reversed, boolean skipFirst) {
+            int points = piece.length / 2;
+            for (int i = skipFirst ? 1 : 0; i < points; i++) {
+                int p = reversed ? points - 1 - i : i;
+                add(piece[2 * p]);
+                add(piece[2 * p + 1]);
+            }
+        }
+
+        void add(float value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        float get(int i) { return values[i]; }
+        int size() { return size; }
+        float[] toArray() { return Arrays.copyOf(values, size); }
+    }
+}
@@ -0,0 +1,20 @@
+package program.model;
+
+/**
+ * Potential for bidirectional A*: the straight-line distance to each end of the route, divided by the highest
+ * speed in the graph when driving. No road is shorter than the straight line between its ends, and no car is
+ * faster than the fastest road, so the estimates never exceed the real weight of the rest of the route.
+ */
+class GeographicPotential {
+    static Potential of(Graph graph, int source, int destination, Model.MOT modeOfTransport) {
+        // Walking and cycling weigh an edge by its length, driving by its length over the speed
+        float scale = modeOfTransport != Model.MOT.CAR ? 1 : graph.maxSpeed > 0 ? 1 / graph.maxSpeed : 0;
+        Vertex s = graph.vertex(source), t = graph.vertex(destination);
+        return Potential.average(v -> scale * distance(graph.vertex(v), t), v -> scale * distance(graph.vertex(v), s));
+    }
+
+    private static float distance(Vertex a, Vertex b) {
+        float dx = a.getX() - b.getX(), dy = a.getY() - b.getY();
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
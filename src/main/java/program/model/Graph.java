@@ -1,141 +1,179 @@
-//package program.model;
-//
-//import program.shared.MapElement;
-//import program.shared.MapRoadSegment;
-//
-//import java.util.HashMap;
-//
-//
-//// This class is heavily influenced by Robert Sedgewick and Kevin Wayne's library "algs4.jar"
-//// implementation of "EdgeWeightedDigraph" which has been modified slightly for use in our mapgraph.
-//public class Graph {
-//    private int edgeAmount;
-//    private HashMap<Integer, Vertex> idToVertex;
-//
-//    //region GraphDebugging
-//    public static void main(String[] args) {
-//        Graph graph = new Graph();
-//        graph.testMethod(graph);
-//    }
-//
-//    private void testMethod(Graph graph){
-//        /*MapRoadSegment debuggingSegment = new MapRoadSegment(new Point(10,10), new Point(20, 20), "lolType");
-//
-//        // loop and add random edges and vertices
-//        final int TESTSIZE = 15_000_000;
-//
-//        Random random = new Random();
-//
-//        long start = System.currentTimeMillis();
-//
-//        // Vertices added while reading nodes of the osm-file
-//        for (int n = 0; n < TESTSIZE; n++){
-//            Vertex newVertex = new Vertex(random.nextFloat(0, TESTSIZE), random.nextFloat(0, TESTSIZE));
-//            graph.addVertex(newVertex);
-//            idToVertex.put(n, newVertex);
-//        }
-//        // Edges added while reading ways of osm-file
-//
-//        for (int n = 0; n < TESTSIZE - 1; n++){
-//            //TODO: maybe add if statements that set a weight variable?
-//            Vertex from = idToVertex.get(n);
-//            Vertex to = idToVertex.get(n + 1);
-//            double weight = distance(from, to);
-//
-//            // Edge going one way
-//            DirectedEdge directedEdge = new DirectedEdge(from, to, weight, debuggingSegment);
-//            from.addEdge(directedEdge);
-//
-//            // Edge going the other way
-//            DirectedEdge otherWay = new DirectedEdge(to, from, weight, debuggingSegment);
-//            to.addEdge(otherWay);
-//        }
-//
-//        long end = System.currentTimeMillis();
-//
-//        System.out.println(end-start);
-//        //System.out.println(graph);
-//         */
-//    }
-//    //endregion
-//
-//
-//    // Initializes graph with initial amount of vertices and 0 edges
-//    public Graph() {
-//        this.edgeAmount = 0;
-//        idToVertex = new HashMap<>();
-//    }
-//
-//
-//    public void addVertex(Vertex vertex){
-//        idToVertex.put(getVertexAmount(), vertex);
-//    }
-//
-//    public void addEdge(Vertex fromVertex, Vertex toVertex, float weight, MapRoadSegment mapRoadSegment) {
-//        DirectedEdge directedEdge = new DirectedEdge(fromVertex, toVertex, weight, mapRoadSegment);
-//        fromVertex.addOutEdge(directedEdge);
-//        toVertex.addInEdge(directedEdge);
-//        edgeAmount++;
-//    }
-//
-//
-//    public double distance(Vertex from,Vertex to){
-//        double xDifference = to.getX() - from.getX();
-//        double yDifference = to.getY() - from.getY();
-//        return Math.sqrt(Math.pow(xDifference, 2) + Math.pow(yDifference, 2));
-//    }
-//
-//
-//
-//
-//
-//
-//    // returns bag of directed edges incident from vertex (TODO: maybe change parameter to MapElement)
-////    public Iterable<DirectedEdge> adjacentVertices(Vertex vertex) {
-////        // validateVertex(vertex);
-////        return adjacencyMap.get(vertex);
-////    }
-//
-//// returns bag of all directed edges in digraph
-////    public Iterable<DirectedEdge> edges() {
-////        Bag<DirectedEdge> list = new Bag<DirectedEdge>();
-////        for (int vertex = 0; vertex < adjacencyMap.size(); vertex++) {
-////            for (DirectedEdge edge : adjacentVertices(vertex)) {
-////                list.add(edge);
-////            }
-////        }
-////        return list;
-////    }
-//
-//    private void validateVertex(MapElement vertex) { // TODO: probably not a MapElement like that lol
-//        if (vertex == null)
-//            throw new IllegalArgumentException("Vertex is null");
-//    }
-//
-//    private static final String NEWLINE = System.getProperty("line.separator");
-//    public String toString() {
-//
-//        StringBuilder stringBuilder = new StringBuilder();
-//        stringBuilder.append(getVertexAmount() + " " + edgeAmount + NEWLINE);
-//        for (int vertexId = 0; vertexId < getVertexAmount(); vertexId++) {
-//            stringBuilder.append(vertexId + ": ");
-//            for (DirectedEdge edge : idToVertex.get(vertexId).outEdges) {
-//                stringBuilder.append(edge + "  ");
-//            }
-//            stringBuilder.append(NEWLINE);
-//        }
-//
-//        return stringBuilder.toString();
-//
-//    }
-//
-//
-//    //region Getters
-//    public int getVertexAmount() {
-//        return idToVertex.size();
-//    }
-//    public int getEdgeAmount() {
-//        return edgeAmount;
-//    }
-//    //endregion
-//}
\ No newline at end of file
+package program.model;
+
+import program.shared.MapRoadSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The road graph in compressed sparse row form. Vertices are numbered 0 to vertexCount - 1 and the edges
+ * leaving vertex v are the edges firstOut[v] to firstOut[v + 1] - 1, so a search walks plain arrays instead of
+ * following DirectedEdge objects. The reverse graph is stored the same way: the edges entering v are
+ * inEdge[firstIn[v]] to inEdge[firstIn[v + 1] - 1], which are ids of forward edges, so both directions share
+ * one weight, length and flag per edge.
+ */
+public class Graph {
+    static final byte CAR_ALLOWED = 1, ONLY_CAR_ALLOWED = 2;
+    // Edge weights a route can be planned by: driving time, and length for walking and cycling, which use the same roads
+    static final int METRICS = 2;
+
+    final Vertex[] vertices;
+    // Forward graph
+    final int[] firstOut;
+    final int[] head;
+    final float[] weight; // Driving time, infinite against the direction of a one-way road
+    final float[] length; // Length of the road segment, the weight when walking or cycling
+    final byte[] flags;
+    final MapRoadSegment[] segments;
+    // Reverse graph
+    final int[] firstIn;
+    final int[] tail;
+    final int[] inEdge;
+    // Highest length over driving time of any edge, for estimating driving times
+    final float maxSpeed;
+
+    /**
+     * Creates a graph from the forward arrays and builds the reverse graph.
+     * @param vertices the vertices by id
+     * @param firstOut vertices.length + 1 offsets into the edge arrays
+     */
+    Graph(Vertex[] vertices, int[] firstOut, int[] head, float[] weight, byte[] flags, MapRoadSegment[] segments) {
+        if (firstOut.length != vertices.length + 1) throw new IllegalArgumentException("Expected " + (vertices.length + 1) + " offsets, got " + firstOut.length);
+        this.vertices = vertices;
+        this.firstOut = firstOut;
+        this.head = head;
+        this.weight = weight;
+        this.flags = flags;
+        this.segments = segments;
+        for (int v = 0; v < vertices.length; v++) vertices[v].setIndex(v);
+
+        int m = head.length;
+        length = new float[m];
+        float fastest = 0;
+        for (int e = 0; e < m; e++) {
+            length[e] = segments[e].getDistance();
+            if (weight[e] > 0 && weight[e] < Float.POSITIVE_INFINITY) fastest = Math.max(fastest, length[e] / weight[e]);
+        }
+        maxSpeed = fastest;
+
+        // Counting sort of the edges by head
+        firstIn = new int[vertices.length + 1];
+        for (int e = 0; e < m; e++) firstIn[head[e] + 1]++;
+        for (int v = 0; v < vertices.length; v++) firstIn[v + 1] += firstIn[v];
+        tail = new int[m];
+        inEdge = new int[m];
+        int[] next = Arrays.copyOf(firstIn, vertices.length);
+        for (int v = 0; v < vertices.length; v++) {
+            for (int e = firstOut[v]; e < firstOut[v + 1]; e++) {
+                int i = next[head[e]]++;
+                tail[i] = v;
+                inEdge[i] = e;
+            }
+        }
+    }
+
+    public int vertexCount() { return vertices.length; }
+    public int edgeCount() { return head.length; }
+
+    public Vertex vertex(int v) { return vertices[v]; }
+    public int head(int edge) { return head[edge]; }
+    public MapRoadSegment segment(int edge) { return segments[edge]; }
+
+    /**
+     * The vertex an edge leaves, found by binary search as the forward graph doesn't store it.
+     */
+    public int tail(int edge) {
+        int low = 0, high = vertices.length - 1;
+        // The last vertex whose first edge is at most edge
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstOut[mid] <= edge) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    public float weight(int edge, Model.MOT modeOfTransport) {
+        return switch (modeOfTransport) {
+            case BIKE, WALK -> length[edge];
+            default -> weight[edge];
+        };
+    }
+
+    static int metric(Model.MOT modeOfTransport) {
+        return modeOfTransport == Model.MOT.CAR ? 0 : 1;
+    }
+
+    // A mode of transport that is routed with the metric
+    static Model.MOT modeOf(int metric) {
+        return metric == 0 ? Model.MOT.CAR : Model.MOT.WALK;
+    }
+
+    public boolean isAllowed(int edge, Model.MOT modeOfTransport) {
+        return switch (modeOfTransport) {
+            case CAR -> (flags[edge] & CAR_ALLOWED) != 0;
+            case BIKE, WALK -> (flags[edge] & ONLY_CAR_ALLOWED) == 0;
+        };
+    }
+
+    /**
+     * Collects the edges while a map is imported and builds the graph once every edge is known.
+     */
+    public static class Builder {
+        private final List<Vertex> vertices = new ArrayList<>();
+        private final List<MapRoadSegment> segments = new ArrayList<>();
+        private int[] from = new int[64];
+        private int[] to = new int[64];
+        private float[] weights = new float[64];
+
+        /**
+         * Adds a road segment as a directed edge.
+         * @param weight the driving time, infinite when cars may not use the segment in this direction
+         */
+        public void addEdge(Vertex a, Vertex b, float weight, MapRoadSegment segment) {
+            int m = segments.size();
+            if (m == from.length) {
+                from = Arrays.copyOf(from, m * 2);
+                to = Arrays.copyOf(to, m * 2);
+                weights = Arrays.copyOf(weights, m * 2);
+            }
+            from[m] = id(a);
+            to[m] = id(b);
+            weights[m] = weight;
+            segments.add(segment);
+        }
+
+        // Vertices are numbered in the order they are first used
+        private int id(Vertex v) {
+            if (v.getIndex() < 0) {
+                v.setIndex(vertices.size());
+                vertices.add(v);
+            }
+            return v.getIndex();
+        }
+
+        public Graph build() {
+            int n = vertices.size(), m = segments.size();
+            int[] firstOut = new int[n + 1];
+            for (int e = 0; e < m; e++) firstOut[from[e] + 1]++;
+            for (int v = 0; v < n; v++) firstOut[v + 1] += firstOut[v];
+
+            // Edges keep the order they were added in within each vertex
+            int[] head = new int[m];
+            float[] weight = new float[m];
+            byte[] flags = new byte[m];
+            MapRoadSegment[] edgeSegments = new MapRoadSegment[m];
+            int[] next = Arrays.copyOf(firstOut, n);
+            for (int e = 0; e < m; e++) {
+                int i = next[from[e]]++;
+                MapRoadSegment segment = segments.get(e);
+                head[i] = to[e];
+                weight[i] = weights[e];
+                flags[i] = (byte) ((segment.isCarAllowed() ? CAR_ALLOWED : 0) | (segment.isOnlyCarAllowed() ? ONLY_CAR_ALLOWED : 0));
+                edgeSegments[i] = segment;
+            }
+            return new Graph(vertices.toArray(new Vertex[0]), firstOut, head, weight, flags, edgeSegments);
+        }
+    }
+}
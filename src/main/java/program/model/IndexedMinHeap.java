@@ -0,0 +1,124 @@
+package program.model;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of vertex ids keyed by distance, where each vertex knows its place in the heap.
+ * Lowering the key of a queued vertex moves it up in O(log n) instead of the linear scan
+ * PriorityQueue.remove needs to find it, which made long routes quadratic.
+ */
+class IndexedMinHeap {
+    private final int[] heap; // Vertex ids in heap order
+    private final float[] keys; // Key of the vertex at the same place in heap
+    private final int[] position; // Place of each vertex in heap, -1 when it is not queued
+    private int size = 0;
+
+    IndexedMinHeap(int vertexCount) {
+        heap = new int[vertexCount];
+        keys = new float[vertexCount];
+        position = new int[vertexCount];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() { return size == 0; }
+    int size() { return size; }
+
+    boolean contains(int v) {
+        return position[v] != -1;
+    }
+
+    /**
+     * Queues the vertex with the key, or lowers its key if it is queued with a larger one.
+     */
+    void insertOrDecrease(int v, float key) {
+        int i = position[v];
+        if (i == -1) {
+            i = size++;
+            heap[i] = v;
+            position[v] = i;
+        } else if (key >= keys[i]) {
+            return;
+        }
+        keys[i] = key;
+        siftUp(i);
+    }
+
+    /**
+     * Queues the vertex with the key, or changes its key to it if it is queued, whether that is larger or smaller.
+     */
+    void update(int v, float key) {
+        int i = position[v];
+        if (i == -1 || key < keys[i]) {
+            insertOrDecrease(v, key);
+            return;
+        }
+        keys[i] = key;
+        siftDown(i);
+    }
+
+    int peek() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return heap[0];
+    }
+
+    float peekKey() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return keys[0];
+    }
+
+    int poll() {
+        int min = peek();
+        position[min] = -1;
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Empties the heap in time proportional to its size, not to the number of vertices.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        float key = keys[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            move(parent, i);
+            i = parent;
+        }
+        place(v, key, i);
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        float key = keys[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (keys[child] >= key) break;
+            move(child, i);
+            i = child;
+        }
+        place(v, key, i);
+    }
+
+    private void move(int from, int to) {
+        place(heap[from], keys[from], to);
+    }
+
+    private void place(int v, float key, int i) {
+        heap[i] = v;
+        keys[i] = key;
+        position[v] = i;
+    }
+}
@@ -0,0 +1,152 @@
+package program.model;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Landmarks for ALT routing (A*, landmarks and the triangle inequality). For a few vertices spread around the
+ * edge of the map the distance from and to every vertex is known, and by the triangle inequality
+ * d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L), which bounds the rest of a route far more
+ * tightly than the straight line does.
+ * There is a table per metric of the graph.
+ * The tables are FloatBuffers so a map file can keep them memory-mapped outside the heap, as they hold
+ * 4 * count floats per vertex.
+ */
+class Landmarks {
+    static final int DEFAULT_COUNT = 16;
+    // Landmarks used per query, the ones giving the best bound between its ends
+    private static final int ACTIVE = 4;
+
+    final int[] vertices;
+    // Per metric, indexed [v * count + i]: the distance from landmark i to v and from v to landmark i
+    final FloatBuffer[] from;
+    final FloatBuffer[] to;
+
+    Landmarks(int[] vertices, FloatBuffer[] from, FloatBuffer[] to) {
+        if (from.length != Graph.METRICS || to.length != Graph.METRICS) throw new IllegalArgumentException("Expected tables for " + Graph.METRICS + " metrics");
+        this.vertices = vertices;
+        this.from = from;
+        this.to = to;
+    }
+
+    int count() {
+        return vertices.length;
+    }
+
+    /**
+     * Picks landmarks by farthest selection and computes their tables. The first landmark is the vertex
+     * farthest from vertex 0, every next one the vertex farthest from all landmarks picked so far, which puts
+     * them on the edge of the map behind the routes they bound. The tables are computed in parallel.
+     */
+    static Landmarks select(Graph graph, int count) {
+        count = Math.min(count, graph.vertexCount());
+        int[] landmarks = new int[count];
+        if (count == 0) return new Landmarks(landmarks, new FloatBuffer[] { FloatBuffer.allocate(0), FloatBuffer.allocate(0) },
+                new FloatBuffer[] { FloatBuffer.allocate(0), FloatBuffer.allocate(0) });
+        float[] nearest = new float[graph.vertexCount()];
+        Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+        int next = farthest(distances(graph, 0, 1, false));
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = next;
+            float[] distances = distances(graph, next, 1, false);
+            for (int v = 0; v < nearest.length; v++) nearest[v] = Math.min(nearest[v], distances[v]);
+            next = farthest(nearest);
+        }
+
+        int n = graph.vertexCount(), size = count;
+        float[][] from = new float[Graph.METRICS][n * size], to = new float[Graph.METRICS][n * size];
+        IntStream.range(0, Graph.METRICS * size * 2).parallel().forEach(job -> {
+            int metric = job / (size * 2), i = job % (size * 2) / 2;
+            boolean reverse = job % 2 == 1;
+            float[] distances = distances(graph, landmarks[i], metric, reverse);
+            float[] table = reverse ? to[metric] : from[metric];
+            for (int v = 0; v < n; v++) table[v * size + i] = distances[v];
+        });
+        FloatBuffer[] fromBuffers = new FloatBuffer[Graph.METRICS], toBuffers = new FloatBuffer[Graph.METRICS];
+        for (int metric = 0; metric < Graph.METRICS; metric++) {
+            fromBuffers[metric] = FloatBuffer.wrap(from[metric]);
+            toBuffers[metric] = FloatBuffer.wrap(to[metric]);
+        }
+        return new Landmarks(landmarks, fromBuffers, toBuffers);
+    }
+
+    // The reached vertex with the largest distance
+    private static int farthest(float[] distances) {
+        int farthest = 0;
+        float farthestDistance = -1;
+        for (int v = 0; v < distances.length; v++) {
+            if (distances[v] == Float.POSITIVE_INFINITY || distances[v] <= farthestDistance) continue;
+            farthest = v;
+            farthestDistance = distances[v];
+        }
+        return farthest;
+    }
+
+    /**
+     * Distances from the source to every vertex, or from every vertex to the source when reverse is set.
+     * Unreached vertices are infinitely far away.
+     */
+    static float[] distances(Graph graph, int source, int metric, boolean reverse) {
+        Model.MOT modeOfTransport = Graph.modeOf(metric);
+        float[] distTo = new float[graph.vertexCount()];
+        Arrays.fill(distTo, Float.POSITIVE_INFINITY);
+        IndexedMinHeap queue = new IndexedMinHeap(graph.vertexCount());
+        distTo[source] = 0;
+        queue.insertOrDecrease(source, 0);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            int first = reverse ? graph.firstIn[v] : graph.firstOut[v], last = reverse ? graph.firstIn[v + 1] : graph.firstOut[v + 1];
+            for (int i = first; i < last; i++) {
+                int edge = reverse ? graph.inEdge[i] : i;
+                if (!graph.isAllowed(edge, modeOfTransport)) continue;
+                int w = reverse ? graph.tail[i] : graph.head[edge];
+                float distance = distTo[v] + graph.weight(edge, modeOfTransport);
+                if (distance >= distTo[w]) continue;
+                distTo[w] = distance;
+                queue.insertOrDecrease(w, distance);
+            }
+        }
+        return distTo;
+    }
+
+    /**
+     * The ALT potential for a route, using the landmarks that bound the distance between its ends best.
+     */
+    Potential potential(int source, int destination, Model.MOT modeOfTransport) {
+        int metric = Graph.metric(modeOfTransport);
+        FloatBuffer from = this.from[metric], to = this.to[metric];
+        int count = count();
+
+        // Rank the landmarks by their bound on the whole route
+        Integer[] order = new Integer[count];
+        float[] bounds = new float[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            bounds[i] = bound(from, to, count, i, source, destination);
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(bounds[b], bounds[a]));
+        int[] active = new int[Math.min(ACTIVE, count)];
+        for (int i = 0; i < active.length; i++) active[i] = order[i];
+
+        return Potential.average(v -> estimate(from, to, count, active, v, destination),
+                v -> estimate(from, to, count, active, source, v));
+    }
+
+    // Lower bound of the distance from a to b using the given landmarks
+    private static float estimate(FloatBuffer from, FloatBuffer to, int count, int[] active, int a, int b) {
+        float best = 0;
+        for (int i : active) best = Math.max(best, bound(from, to, count, i, a, b));
+        return best;
+    }
+
+    // Lower bound of the distance from a to b by landmark i. Bounds through unreachable vertices are left out.
+    private static float bound(FloatBuffer from, FloatBuffer to, int count, int i, int a, int b) {
+        float bound = 0;
+        float fromA = from.get(a * count + i), fromB = from.get(b * count + i);
+        if (fromA < Float.POSITIVE_INFINITY && fromB < Float.POSITIVE_INFINITY) bound = fromB - fromA;
+        float toA = to.get(a * count + i), toB = to.get(b * count + i);
+        if (toA < Float.POSITIVE_INFINITY && toB < Float.POSITIVE_INFINITY) bound = Math.max(bound, toA - toB);
+        return bound;
+    }
+}
@@ -0,0 +1,568 @@
+package program.model;
+
+import program.shared.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Flat binary cache of a parsed map, replacing the old ObjectOutputStream (.obj) cache.
+ * The file starts with a magic number, a format version and a directory of sections. Every section is a
+ * run of primitive arrays (coordinates, segments, the road graph, R-tree nodes, addresses) that is memory-mapped
+ * on its own and copied out with bulk reads, so no per-object deserialization takes place.
+ * Bump VERSION whenever the layout of a section changes; read rejects older files with an IOException, upon which
+ * Model re-imports them from the extract next to them.
+ */
+public class MapFile {
+    public static final String EXTENSION = ".map";
+    static final int MAGIC = 0x4D4F4446; // "MODF"
+    static final int VERSION = 9;
+
+    private static final int META = 0, STRINGS = 1, VERTICES = 2, SEGMENTS = 3, GRAPH = 4, SHAPES = 5, TREES = 6, ADDRESSES = 7, LANDMARKS = 8, HIERARCHIES = 9, CUSTOMIZABLE = 10;
+    private static final int SECTION_COUNT = 11;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + SECTION_COUNT * 2 * Long.BYTES;
+
+    private static final byte SHAPE_PATH = 0, SHAPE_FILLABLE = 1;
+    private static final byte CAR_ALLOWED = 1, ONLY_CAR_ALLOWED = 2;
+
+    public static void write(String fileName, TreeStorage storage, AddressBook addressBook) throws IOException {
+        Graph graph = storage.getGraph();
+        // Number every object once so that references can be stored as ints
+        StringTable strings = new StringTable();
+        IdentityHashMap<Vertex, Integer> vertexIds = new IdentityHashMap<>();
+        List<Vertex> vertices = new ArrayList<>();
+        IdentityHashMap<MapElement, Integer> elementIds = new IdentityHashMap<>();
+        List<MapRoadSegment> segments = new ArrayList<>();
+        List<MapElement> shapes = new ArrayList<>();
+
+        for (RTree tree : storage.trees()) collectElements(tree.root, elementIds, segments, shapes);
+        for (MapRoadSegment segment : graph.segments) {
+            if (!elementIds.containsKey(segment)) {
+                elementIds.put(segment, segments.size());
+                segments.add(segment);
+            }
+        }
+        // The graph's vertices come first, so a vertex is stored at its id in the graph
+        for (Vertex v : graph.vertices) vertexId(v, vertexIds, vertices);
+        for (MapRoadSegment segment : segments) {
+            vertexId(segment.getVertexA(), vertexIds, vertices);
+            vertexId(segment.getVertexB(), vertexIds, vertices);
+        }
+
+        try (Writer out = new Writer(Path.of(fileName))) {
+            out.beginSection(META);
+            out.putFloat(storage.getMinLat());
+            out.putFloat(storage.getMaxLat());
+            out.putFloat(storage.getMinLon());
+            out.putFloat(storage.getMaxLon());
+            out.putInt(storage.elementCount);
+
+            // Strings are written last in the file but numbered first, so the other sections can refer to them
+            int[] segmentNames = new int[segments.size()];
+            int[] segmentTypes = new int[segments.size()];
+            for (int i = 0; i < segments.size(); i++) {
+                segmentNames[i] = strings.id(segments.get(i).getName());
+                segmentTypes[i] = strings.id(segments.get(i).getType());
+            }
+            int[] shapeTypes = new int[shapes.size()];
+            for (int i = 0; i < shapes.size(); i++) shapeTypes[i] = strings.id(shapes.get(i).getType());
+            List<String> streets = new ArrayList<>();
+            List<String> rests = new ArrayList<>();
+            List<Point> locations = new ArrayList<>();
+            addressBook.forEachAddress((street, rest, location) -> {
+                streets.add(street);
+                rests.add(rest);
+                locations.add(location);
+            });
+
+            out.beginSection(VERTICES);
+            out.putInt(vertices.size());
+            for (Vertex v : vertices) out.putFloat(v.getX());
+            for (Vertex v : vertices) out.putFloat(v.getY());
+
+            out.beginSection(SEGMENTS);
+            out.putInt(segments.size());
+            for (MapRoadSegment s : segments) out.putInt(vertexIds.get(s.getVertexA()));
+            for (MapRoadSegment s : segments) out.putInt(vertexIds.get(s.getVertexB()));
+            out.putInts(segmentNames);
+            out.putInts(segmentTypes);
+            for (MapRoadSegment s : segments) out.putInt(s.getMaxSpeed());
+            for (MapRoadSegment s : segments) {
+                out.putByte((byte) ((s.isCarAllowed() ? CAR_ALLOWED : 0) | (s.isOnlyCarAllowed() ? ONLY_CAR_ALLOWED : 0)));
+            }
+
+            // The forward graph as stored in memory, the reverse graph is rebuilt from it when reading
+            out.beginSection(GRAPH);
+            out.putInt(graph.vertexCount());
+            out.putInt(graph.edgeCount());
+            out.putInts(graph.firstOut);
+            out.putInts(graph.head);
+            out.putFloats(graph.weight);
+            out.putBytes(graph.flags);
+            for (MapRoadSegment segment : graph.segments) out.putInt(elementIds.get(segment));
+
+            out.beginSection(SHAPES);
+            out.putInt(shapes.size());
+            for (MapElement shape : shapes) out.putByte(shape instanceof MapFillable ? SHAPE_FILLABLE : SHAPE_PATH);
+            out.putInts(shapeTypes);
+            int offset = 0;
+            out.putInt(offset);
+            for (MapElement shape : shapes) {
+                offset += shapePoints(shape).length;
+                out.putInt(offset);
+            }
+            for (MapElement shape : shapes) out.putFloats(shapePoints(shape));
+            // Douglas-Peucker significance per point, NaN for shapes that are always drawn in full
+            for (MapElement shape : shapes) {
+                float[] significance = shapeSignificance(shape);
+                if (significance != null) out.putFloats(significance);
+                else for (int i = 0; i < shapePoints(shape).length / 2; i++) out.putFloat(Float.NaN);
+            }
+
+            out.beginSection(TREES);
+            RTree[] trees = storage.trees();
+            out.putInt(trees.length);
+            for (RTree tree : trees) {
+                out.putInt(tree.getMinChildren());
+                out.putInt(tree.getMaxChildren());
+                // Elements inserted after loading must be split the same way as after an import
+                out.putByte((byte) tree.getSplitStrategy().ordinal());
+                out.putInt(tree.size());
+                writeNode(out, tree.root, elementIds);
+            }
+
+            // Distance tables of the ALT landmarks, read back as views of the mapped file
+            Landmarks landmarks = storage.getLandmarks();
+            out.beginSection(LANDMARKS);
+            out.putInt(landmarks.count());
+            out.putInts(landmarks.vertices);
+            for (int metric = 0; metric < Graph.METRICS; metric++) {
+                out.putFloats(landmarks.from[metric]);
+                out.putFloats(landmarks.to[metric]);
+            }
+
+            // Contraction hierarchies, shortcuts refer to the edges of the graph section by id
+            out.beginSection(HIERARCHIES);
+            for (int metric = 0; metric < Graph.METRICS; metric++) {
+                ContractionHierarchy hierarchy = storage.getContractionHierarchy(metric);
+                out.putInt(hierarchy.shortcutCount());
+                out.putInts(hierarchy.rank);
+                out.putInts(hierarchy.firstUp);
+                out.putInts(hierarchy.upHead);
+                out.putFloats(hierarchy.upWeight);
+                out.putInts(hierarchy.upEdge);
+                out.putInts(hierarchy.firstDown);
+                out.putInts(hierarchy.downTail);
+                out.putFloats(hierarchy.downWeight);
+                out.putInts(hierarchy.downEdge);
+                out.putInts(hierarchy.shortcutTail);
+                out.putInts(hierarchy.shortcutHead);
+                out.putInts(hierarchy.shortcutFirst);
+                out.putInts(hierarchy.shortcutSecond);
+            }
+
+            // Only the metric independent part, metrics are customized when they are first used
+            CustomizableHierarchy customizable = storage.getCustomizableHierarchy();
+            out.beginSection(CUSTOMIZABLE);
+            out.putInt(customizable.arcCount());
+            out.putInts(customizable.rank);
+            out.putInts(customizable.firstArc);
+            out.putInts(customizable.arcHead);
+
+            out.beginSection(ADDRESSES);
+            out.putInt(locations.size());
+            for (String street : streets) out.putInt(strings.id(street));
+            for (String rest : rests) out.putInt(strings.id(rest));
+            for (Point p : locations) out.putFloat(p.getX());
+            for (Point p : locations) out.putFloat(p.getY());
+
+            out.beginSection(STRINGS);
+            out.putInt(strings.size());
+            for (String s : strings.values()) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.putBytes(bytes);
+            }
+            out.commit();
+        }
+    }
+
+    /**
+     * Reads a map file into the given storage containers.
+     * @param fileName the .map file to read
+     * @param addressBook address book the stored addresses are added to
+     * @return the TreeStorage holding all map elements and the road graph
+     * @throws IOException if the file cannot be read or was written by another version of the format
+     */
+    public static TreeStorage read(String fileName, AddressBook addressBook) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) throw new IOException(fileName + " is not a map file");
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) throw new IOException(fileName + " is not a map file");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported map file version " + version + ", expected " + VERSION);
+            int sectionCount = header.getInt();
+            if (sectionCount != SECTION_COUNT) throw new IOException(fileName + " has " + sectionCount + " sections, expected " + SECTION_COUNT);
+            ByteBuffer[] sections = new ByteBuffer[sectionCount];
+            for (int i = 0; i < sectionCount; i++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                // A truncated file must not be mistaken for a map
+                if (offset < HEADER_SIZE || length < 0 || offset + length > fileSize) {
+                    throw new IOException(fileName + " is truncated or corrupt, section " + i + " lies outside the file");
+                }
+                sections[i] = map(channel, offset, length);
+            }
+
+            ByteBuffer in = sections[STRINGS];
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+            }
+
+            in = sections[VERTICES];
+            int vertexCount = in.getInt();
+            float[] xs = getFloats(in, vertexCount);
+            float[] ys = getFloats(in, vertexCount);
+            Vertex[] vertices = new Vertex[vertexCount];
+            for (int i = 0; i < vertexCount; i++) vertices[i] = new Vertex(xs[i], ys[i]);
+
+            in = sections[SEGMENTS];
+            int segmentCount = in.getInt();
+            int[] a = getInts(in, segmentCount);
+            int[] b = getInts(in, segmentCount);
+            int[] names = getInts(in, segmentCount);
+            int[] types = getInts(in, segmentCount);
+            int[] speeds = getInts(in, segmentCount);
+            byte[] flags = new byte[segmentCount];
+            in.get(flags);
+            MapRoadSegment[] segments = new MapRoadSegment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new MapRoadSegment(vertices[a[i]], vertices[b[i]], strings[names[i]], strings[types[i]],
+                        speeds[i], (flags[i] & CAR_ALLOWED) != 0, (flags[i] & ONLY_CAR_ALLOWED) != 0);
+            }
+
+            in = sections[GRAPH];
+            int graphVertexCount = in.getInt();
+            int edgeCount = in.getInt();
+            int[] firstOut = getInts(in, graphVertexCount + 1);
+            int[] head = getInts(in, edgeCount);
+            float[] weights = getFloats(in, edgeCount);
+            byte[] edgeFlags = new byte[edgeCount];
+            in.get(edgeFlags);
+            int[] edgeSegmentIds = getInts(in, edgeCount);
+            MapRoadSegment[] edgeSegments = new MapRoadSegment[edgeCount];
+            for (int i = 0; i < edgeCount; i++) edgeSegments[i] = segments[edgeSegmentIds[i]];
+            Graph graph = new Graph(Arrays.copyOf(vertices, graphVertexCount), firstOut, head, weights, edgeFlags, edgeSegments);
+
+            in = sections[SHAPES];
+            int shapeCount = in.getInt();
+            byte[] kinds = new byte[shapeCount];
+            in.get(kinds);
+            int[] shapeTypes = getInts(in, shapeCount);
+            int[] offsets = getInts(in, shapeCount + 1);
+            float[] coordinates = getFloats(in, offsets[shapeCount]);
+            float[] significance = getFloats(in, offsets[shapeCount] / 2);
+            MapElement[] shapes = new MapElement[shapeCount];
+            for (int i = 0; i < shapeCount; i++) {
+                int start = offsets[i], end = offsets[i + 1];
+                if (kinds[i] == SHAPE_FILLABLE) {
+                    MapFillable fillable = new MapFillable(strings[shapeTypes[i]], (end - start) / 2);
+                    for (int j = start; j < end; j += 2) fillable.add(coordinates[j], coordinates[j + 1]);
+                    if (end > start && !Float.isNaN(significance[start / 2])) {
+                        fillable.setSignificance(Arrays.copyOfRange(significance, start / 2, end / 2));
+                    }
+                    shapes[i] = fillable;
+                } else {
+                    MapPath path = new MapPath(strings[shapeTypes[i]], (end - start) / 2);
+                    for (int j = start; j < end; j += 2) path.add(coordinates[j], coordinates[j + 1]);
+                    if (end > start && !Float.isNaN(significance[start / 2])) {
+                        path.setSignificance(Arrays.copyOfRange(significance, start / 2, end / 2));
+                    }
+                    shapes[i] = path;
+                }
+            }
+
+            TreeStorage storage = new TreeStorage();
+            in = sections[META];
+            float minLat = in.getFloat(), maxLat = in.getFloat(), minLon = in.getFloat(), maxLon = in.getFloat();
+            storage.setMapArea(minLat, minLon, maxLat, maxLon);
+            storage.elementCount = in.getInt();
+
+            in = sections[TREES];
+            RTree[] trees = new RTree[in.getInt()];
+            for (int i = 0; i < trees.length; i++) {
+                int minChildren = in.getInt();
+                int maxChildren = in.getInt();
+                RTree.splitStrategy strategy = RTree.splitStrategy.values()[in.get()];
+                int size = in.getInt();
+                trees[i] = new RTree(minChildren, maxChildren, strategy, readNode(in, maxChildren, segments, shapes), size);
+            }
+            storage.setTrees(trees);
+            storage.setGraph(graph);
+
+            in = sections[LANDMARKS];
+            int landmarkCount = in.getInt();
+            int[] landmarkVertices = getInts(in, landmarkCount);
+            FloatBuffer[] from = new FloatBuffer[Graph.METRICS], to = new FloatBuffer[Graph.METRICS];
+            for (int metric = 0; metric < Graph.METRICS; metric++) {
+                from[metric] = viewFloats(in, graphVertexCount * landmarkCount);
+                to[metric] = viewFloats(in, graphVertexCount * landmarkCount);
+            }
+            storage.setLandmarks(new Landmarks(landmarkVertices, from, to));
+
+            in = sections[HIERARCHIES];
+            ContractionHierarchy[] hierarchies = new ContractionHierarchy[Graph.METRICS];
+            for (int metric = 0; metric < Graph.METRICS; metric++) {
+                int shortcutCount = in.getInt();
+                int[] rank = getInts(in, graphVertexCount);
+                int[] firstUp = getInts(in, graphVertexCount + 1);
+                int upCount = firstUp[graphVertexCount];
+                int[] upHead = getInts(in, upCount);
+                float[] upWeight = getFloats(in, upCount);
+                int[] upEdge = getInts(in, upCount);
+                int[] firstDown = getInts(in, graphVertexCount + 1);
+                int downCount = firstDown[graphVertexCount];
+                int[] downTail = getInts(in, downCount);
+                float[] downWeight = getFloats(in, downCount);
+                int[] downEdge = getInts(in, downCount);
+                hierarchies[metric] = new ContractionHierarchy(graph.edgeCount(), rank, firstUp, upHead, upWeight, upEdge, firstDown, downTail, downWeight, downEdge,
+                        getInts(in, shortcutCount), getInts(in, shortcutCount), getInts(in, shortcutCount), getInts(in, shortcutCount));
+            }
+            storage.setContractionHierarchies(hierarchies);
+
+            in = sections[CUSTOMIZABLE];
+            int arcCount = in.getInt();
+            int[] customizableRank = getInts(in, graphVertexCount);
+            int[] firstArc = getInts(in, graphVertexCount + 1);
+            storage.setCustomizableHierarchy(new CustomizableHierarchy(graph, customizableRank, firstArc, getInts(in, arcCount)));
+
+            in = sections[ADDRESSES];
+            int addressCount = in.getInt();
+            int[] streets = getInts(in, addressCount);
+            int[] rests = getInts(in, addressCount);
+            float[] addressX = getFloats(in, addressCount);
+            float[] addressY = getFloats(in, addressCount);
+            for (int i = 0; i < addressCount; i++) {
+                addressBook.addAddress(strings[streets[i]], strings[rests[i]], new Point(addressX[i], addressY[i]));
+            }
+
+            return storage;
+        }
+    }
+
+    private static void collectElements(RTreeNode node, IdentityHashMap<MapElement, Integer> ids, List<MapRoadSegment> segments, List<MapElement> shapes) {
+        if (node.isLeaf()) {
+            for (MapElement e : node.elements) {
+                if (ids.containsKey(e)) continue;
+                if (e instanceof MapRoadSegment segment) {
+                    ids.put(e, segments.size());
+                    segments.add(segment);
+                } else if (e instanceof MapPath || e instanceof MapFillable) {
+                    ids.put(e, shapes.size());
+                    shapes.add(e);
+                } else {
+                    throw new IllegalArgumentException("Cannot store map element of type " + e.getClass().getSimpleName());
+                }
+            }
+        } else {
+            for (RTreeNode child : node.children) collectElements(child, ids, segments, shapes);
+        }
+    }
+
+    private static void vertexId(Vertex v, IdentityHashMap<Vertex, Integer> ids, List<Vertex> vertices) {
+        if (!ids.containsKey(v)) {
+            ids.put(v, vertices.size());
+            vertices.add(v);
+        }
+    }
+
+    private static float[] shapePoints(MapElement shape) {
+        return shape instanceof MapFillable fillable ? fillable.getPoints() : ((MapPath) shape).getPoints();
+    }
+
+    private static float[] shapeSignificance(MapElement shape) {
+        return shape instanceof MapFillable fillable ? fillable.getSignificance() : ((MapPath) shape).getSignificance();
+    }
+
+    // Nodes are written in pre-order. Leaf entries are segment ids, or -(shape id + 1) for shapes.
+    private static void writeNode(Writer out, RTreeNode node, IdentityHashMap<MapElement, Integer> elementIds) throws IOException {
+        boolean leaf = node.isLeaf();
+        out.putByte((byte) (leaf ? 1 : 0));
+        out.putFloat(node.getMinPoint()[0]);
+        out.putFloat(node.getMinPoint()[1]);
+        out.putFloat(node.getMaxPoint()[0]);
+        out.putFloat(node.getMaxPoint()[1]);
+        if (leaf) {
+            out.putInt(node.elements.size());
+            for (MapElement e : node.elements) {
+                int id = elementIds.get(e);
+                out.putInt(e instanceof MapRoadSegment ? id : -(id + 1));
+            }
+        } else {
+            out.putInt(node.children.size());
+            for (RTreeNode child : node.children) writeNode(out, child, elementIds);
+        }
+    }
+
+    private static RTreeNode readNode(ByteBuffer in, int maxChildren, MapRoadSegment[] segments, MapElement[] shapes) {
+        RTreeNode node = new RTreeNode(maxChildren);
+        boolean leaf = in.get() == 1;
+        node.setBoundingBox(new float[]{ in.getFloat(), in.getFloat() }, new float[]{ in.getFloat(), in.getFloat() });
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            if (leaf) {
+                int id = in.getInt();
+                node.elements.add(id >= 0 ? segments[id] : shapes[-id - 1]);
+            } else {
+                node.children.add(readNode(in, maxChildren, segments, shapes));
+            }
+        }
+        return node;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int[] getInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static float[] getFloats(ByteBuffer in, int count) {
+        float[] values = new float[count];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + count * Float.BYTES);
+        return values;
+    }
+
+    // A view of the next floats that stays in the mapped file instead of being copied onto the heap
+    private static FloatBuffer viewFloats(ByteBuffer in, int count) {
+        FloatBuffer values = in.asFloatBuffer();
+        values.limit(count);
+        in.position(in.position() + count * Float.BYTES);
+        return values.asReadOnlyBuffer();
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int id(String s) {
+            if (s == null) s = "";
+            Integer id = ids.get(s);
+            if (id == null) {
+                id = values.size();
+                ids.put(s, id);
+                values.add(s);
+            }
+            return id;
+        }
+
+        int size() { return values.size(); }
+        List<String> values() { return values; }
+    }
+
+    /**
+     * Buffered little-endian writer that keeps track of where each section starts. It writes to a temporary
+     * file next to the target, which only replaces the target once commit() has been called, so a failed write
+     * never leaves a truncated map behind.
+     */
+    private static class Writer implements AutoCloseable {
+        private final Path target;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final long[] offsets = new long[SECTION_COUNT];
+        private final long[] lengths = new long[SECTION_COUNT];
+        private int currentSection = -1;
+        private long position;
+        private boolean committed = false;
+
+        Writer(Path target) throws IOException {
+            this.target = target;
+            temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            position = HEADER_SIZE;
+            channel.position(HEADER_SIZE);
+        }
+
+        void beginSection(int section) {
+            endSection();
+            currentSection = section;
+            offsets[section] = position;
+        }
+
+        private void endSection() {
+            if (currentSection >= 0) lengths[currentSection] = position - offsets[currentSection];
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        void putByte(byte b) throws IOException { ensure(1); buffer.put(b); position += 1; }
+        void putInt(int i) throws IOException { ensure(4); buffer.putInt(i); position += 4; }
+        void putFloat(float f) throws IOException { ensure(4); buffer.putFloat(f); position += 4; }
+        void putInts(int[] values) throws IOException { for (int v : values) putInt(v); }
+        void putFloats(float[] values) throws IOException { for (float v : values) putFloat(v); }
+        void putFloats(FloatBuffer values) throws IOException { for (int i = 0; i < values.limit(); i++) putFloat(values.get(i)); }
+        void putBytes(byte[] bytes) throws IOException { for (byte b : bytes) putByte(b); }
+
+        // Marks every section as written, so close() writes the header and moves the file into place
+        void commit() {
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            boolean written = false;
+            try {
+                if (committed) {
+                    endSection();
+                    flush();
+                    buffer.putInt(MAGIC);
+                    buffer.putInt(VERSION);
+                    buffer.putInt(SECTION_COUNT);
+                    for (int i = 0; i < SECTION_COUNT; i++) {
+                        buffer.putLong(offsets[i]);
+                        buffer.putLong(lengths[i]);
+                    }
+                    buffer.flip();
+                    channel.position(0);
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                    channel.force(false);
+                    written = true;
+                }
+            } finally {
+                channel.close();
+                if (!written) Files.deleteIfExists(temporary);
+            }
+            if (written) Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
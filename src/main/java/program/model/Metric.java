@@ -0,0 +1,51 @@
+package program.model;
+
+/**
+ * Edge weights a route can be planned by. A metric only has to give each edge a weight in its direction,
+ * infinite where it may not be used; the customizable hierarchy turns it into a contraction hierarchy in
+ * seconds, so adding a metric doesn't mean preprocessing the map again.
+ * The profiles only ever scale the weight of their mode of transport up, so the geographic and landmark
+ * lower bounds for that mode stay admissible for them.
+ */
+public interface Metric {
+    float weight(Graph graph, int edge);
+
+    enum profile implements Metric {
+        CAR(Model.MOT.CAR), // Driving time
+        BIKE(Model.MOT.BIKE), // Length
+        WALK(Model.MOT.WALK), // Length
+        AVOID_MOTORWAYS(Model.MOT.CAR), // Driving time, with motorways and trunk roads counting ten times as long
+        AVOID_SERVICE_ROADS(Model.MOT.CAR), // Driving time, with service roads counting four times as long
+        BIKE_FRIENDLY(Model.MOT.BIKE); // Length, with cycleways counting as is, other roads for more and busy roads for more still
+
+        private final Model.MOT modeOfTransport;
+
+        profile(Model.MOT modeOfTransport) {
+            this.modeOfTransport = modeOfTransport;
+        }
+
+        public Model.MOT getModeOfTransport() {
+            return modeOfTransport;
+        }
+
+        @Override
+        public float weight(Graph graph, int edge) {
+            if (!graph.isAllowed(edge, modeOfTransport)) return Float.POSITIVE_INFINITY;
+            float weight = graph.weight(edge, modeOfTransport);
+            String type = graph.segment(edge).getType();
+            return switch (this) {
+                case AVOID_MOTORWAYS -> switch (type) {
+                    case "motorway", "motorway_link", "trunk", "trunk_link" -> weight * 10;
+                    default -> weight;
+                };
+                case AVOID_SERVICE_ROADS -> type.equals("service") ? weight * 4 : weight;
+                case BIKE_FRIENDLY -> switch (type) {
+                    case "cycleway" -> weight;
+                    case "primary", "primary_link", "secondary", "secondary_link" -> weight * 3;
+                    default -> weight * 1.5F;
+                };
+                default -> weight;
+            };
+        }
+    }
+}
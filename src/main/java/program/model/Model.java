@@ -7,16 +7,18 @@ import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class Model implements ModelContact{
     private TreeStorage storage;
+    private RoutePlanner routePlanner;
     private AddressBook addressBook;
     private POIRegistry poiRegistry;
     private Settings settings;
 
-    private List<DirectedEdge> edges;
-
-    private List<MapElement> elementsToDraw;
+    // Reused between frames so panning doesn't allocate a new result list every time
+    private final List<MapElement> elementsToDraw = new ArrayList<>();
+    private final Consumer<MapElement> addElementToDraw = elementsToDraw::add;
     private List<MapRoadSegment> plannedRoute;
     private Iterable<String> instructions;
 
@@ -27,13 +29,14 @@ public class Model implements ModelContact{
         WALK
     }
     private MOT modeOfTransport = MOT.CAR;
+    private RoutePlanner.algorithm routingAlgorithm = RoutePlanner.algorithm.CH;
+    private Metric.profile routingProfile = null; // When set, routes are planned by it instead of the mode of transport
 
 
     public Model() throws XMLStreamException, IOException, ClassNotFoundException {
         addressBook = AddressBook.getInstance();
-        edges = new ArrayList<>();
 
-        String toOpen = "C:\\Users\\Apple\\Desktop\\Programming\\BFST23Group12\\src\\main\\java\\program\\denmark-latest.zip.obj";
+        String toOpen = "C:\\Users\\Apple\\Desktop\\Programming\\BFST23Group12\\src\\main\\java\\program\\denmark-latest.zip" + MapFile.EXTENSION;
         open(toOpen);
 
         poiRegistry = POIRegistry.getInstance();
@@ -43,62 +46,78 @@ public class Model implements ModelContact{
     }
 
     private void save(String fileName) throws IOException {
-        try(ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fileName))) {
-            out.writeObject(storage);
-            out.writeObject(addressBook);
-            out.writeObject(edges);
-        }
+        MapFile.write(fileName, storage, addressBook);
     }
 
     private void open(String fileName) throws IOException, XMLStreamException, ClassNotFoundException {
-        if(fileName.endsWith(".obj")){
-            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)))){
-                storage = (TreeStorage) in.readObject();
-                AddressBook ab = (AddressBook) in.readObject();
-                edges = (List<DirectedEdge>) in.readObject();
-
-                AddressBook.setInstance(ab);
-                for (DirectedEdge e : edges) {
-                    e.fromVertex().addOutEdge(e);
-                    e.toVertex().addInEdge(e);
-                }
+        if(fileName.endsWith(MapFile.EXTENSION)){
+            try {
+                storage = MapFile.read(fileName, addressBook);
+            } catch (IOException e) {
+                // A map file of another format version, or a missing or broken one, is rebuilt from the extract it was made from
+                String extract = fileName.substring(0, fileName.length() - MapFile.EXTENSION.length());
+                if (!new File(extract).exists()) throw e;
+                System.out.println("Re-importing " + extract + ": " + e.getMessage());
+                storage = DataParser.parse(extract, addressBook, true);
+                save(fileName);
             }
         } else {
-            storage = DataParser.parse(fileName, addressBook, edges);
-            File objfile = new File(fileName + ".obj");
-            if(!objfile.exists()){
-                save(fileName + ".obj");
-                edges.clear();
+            storage = DataParser.parse(fileName, addressBook, true);
+            File mapFile = new File(fileName + MapFile.EXTENSION);
+            if(!mapFile.exists()){
+                save(fileName + MapFile.EXTENSION);
             }
         }
+        routePlanner = new RoutePlanner(storage);
     }
 
     public void setDrawingArea(float[] p1, float[] p2, int zoomLevel) {
-        TreeStorage.detail detail;
-        // Find detail from zoomLevel
-        if (zoomLevel <= 2500 && zoomLevel > 0) detail = TreeStorage.detail.LOW;
-        else if (zoomLevel >= 2500 && zoomLevel < 10000) detail = TreeStorage.detail.MEDIUM;
-        else detail = TreeStorage.detail.HIGH;
-
         // detail = DataStorage.detail.MEDIUM;
-        elementsToDraw = storage.query(p1, p2, detail);
+        elementsToDraw.clear();
+        storage.query(p1, p2, detailFor(zoomLevel), addElementToDraw);
+    }
+
+    @Override
+    public void queryElements(float[] p1, float[] p2, int zoomLevel, Consumer<MapElement> action) {
+        storage.query(p1, p2, detailFor(zoomLevel), action);
+    }
+
+    private static TreeStorage.detail detailFor(int zoomLevel) {
+        // Find detail from zoomLevel
+        if (zoomLevel <= 2500 && zoomLevel > 0) return TreeStorage.detail.LOW;
+        else if (zoomLevel >= 2500 && zoomLevel < 10000) return TreeStorage.detail.MEDIUM;
+        else return TreeStorage.detail.HIGH;
     }
 
     public void planRoute(MapPoint from, MapPoint to) {
-        var startTime = System.nanoTime();
-        Vertex start = storage.nearestVertex(from);
-        Vertex end = storage.nearestVertex(to);
-        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(start, end, modeOfTransport);
+        Route route = routingProfile == null
+                ? routePlanner.planRoute(from, to, modeOfTransport, routingAlgorithm)
+                : routePlanner.planRoute(from, to, routingProfile);
 
-        plannedRoute = bididi.getPath();
-        instructions = bididi.getInstructions();
-        System.out.println((System.nanoTime()-startTime) / 1_000_000);
+        plannedRoute = route.getPath();
+        instructions = route.getInstructions();
 
-        for (String s : bididi.getInstructions()) {
+        for (String s : instructions) {
             System.out.println(s);
         }
     }
 
+    /**
+     * Plans a route for every pair of points in parallel, without changing the planned route.
+     * @return the routes in the order of the points, null where no route exists
+     */
+    public List<Route> planRoutes(List<MapPoint> from, List<MapPoint> to, MOT modeOfTransport) {
+        return routePlanner.planRoutes(from, to, modeOfTransport, routingAlgorithm);
+    }
+
+    /**
+     * The route distances from every source to every target, in parallel and without planning a route for each pair.
+     * @return the distances by source and then target, infinite where no route connects them
+     */
+    public float[][] distanceMatrix(List<MapPoint> sources, List<MapPoint> targets, MOT modeOfTransport) {
+        return routePlanner.distanceMatrix(sources, targets, modeOfTransport);
+    }
+
     @Override
     public List<MapRoadSegment> getPlannedRoute() {
         return plannedRoute;
@@ -139,6 +158,11 @@ public class Model implements ModelContact{
         storage.setDebug(debug);
     }
 
+    @Override
+    public void setQueryFilter(RTree.queryFilter filter) {
+        storage.setQueryFilter(filter);
+    }
+
     @Override
     public MapPoint addressSearch(String address) {
         // When searching, should pan to MapElement / point on map if not in view.
@@ -187,6 +211,16 @@ public class Model implements ModelContact{
         this.modeOfTransport = modeOfTransportation;
     }
 
+    @Override
+    public void setRoutingAlgorithm(RoutePlanner.algorithm algorithm) {
+        this.routingAlgorithm = algorithm;
+    }
+
+    @Override
+    public void setRoutingProfile(Metric.profile profile) {
+        this.routingProfile = profile;
+    }
+
     public List<MapElement> getElementsToDraw() {
         return elementsToDraw;
     }
@@ -2,6 +2,7 @@ package program.model;
 
 import program.shared.MapElement;
 import java.util.List;
+import java.util.function.Consumer;
 
 import program.shared.MapPoint;
 import program.shared.MapRoadSegment;
@@ -20,11 +21,17 @@ public interface ModelContact {
     public void setTheme(String theme);
     public Theme getTheme();
     public void setModeOfTransportation(MOT modeOfTransportation);
+    public void setRoutingAlgorithm(RoutePlanner.algorithm algorithm);
+    // Null plans routes by the mode of transport again
+    public void setRoutingProfile(Metric.profile profile);
     public List<MapElement> getElementsToDraw();
     public void setDrawingArea(float[] p1, float[] p2, int zoomLevel);
+    // Unlike setDrawingArea this keeps no state, so it can be called from a render thread
+    public void queryElements(float[] p1, float[] p2, int zoomLevel, Consumer<MapElement> action);
     public float getMinLon();
     public float getMinLat();
     public float getMaxLon();
     public float getMaxLat();
     public void setDebug(boolean debug);
+    public void setQueryFilter(RTree.queryFilter filter);
 }
@@ -0,0 +1,51 @@
+package program.model;
+
+import java.util.Arrays;
+
+// Compact set of OSM node ids backed by a sorted long[].
+// Ids are appended in any order. Whenever the buffer fills up it is sorted and its duplicates removed, and it only
+// grows if that leaves it more than half full, so its capacity follows the number of distinct ids, not of refs.
+public class NodeIdSet {
+    private long[] ids;
+    private int size;
+    private boolean sealed = false;
+
+    public NodeIdSet() {
+        ids = new long[1024];
+    }
+
+    public void add(long id) {
+        if (sealed) throw new IllegalStateException("Cannot add ids to a sealed set");
+        if (size == ids.length) {
+            compact();
+            if (size > ids.length / 2) ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[size++] = id;
+    }
+
+    // Sorts the ids and removes duplicates in place
+    private void compact() {
+        Arrays.sort(ids, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || ids[i] != ids[unique - 1]) ids[unique++] = ids[i];
+        }
+        size = unique;
+    }
+
+    // Sorts and deduplicates the ids. Must be called before contains.
+    public void seal() {
+        compact();
+        ids = Arrays.copyOf(ids, size);
+        sealed = true;
+    }
+
+    public boolean contains(long id) {
+        if (!sealed) throw new IllegalStateException("Set must be sealed before lookups");
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
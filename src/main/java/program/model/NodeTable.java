@@ -0,0 +1,129 @@
+package program.model;
+
+import program.shared.Point;
+
+import java.util.Arrays;
+
+// Stores the nodes of an OSM file in parallel primitive arrays instead of one Point object per node.
+// Only nodes that are used by a way are turned into Point/Vertex objects (see materialize).
+public class NodeTable {
+    private long[] ids;
+    private float[] x;
+    private float[] y;
+    private Point[] points; // materialized nodes, null until a way references the node
+    private int size;
+    private boolean sorted = true;
+
+    public NodeTable(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 16);
+        ids = new long[initialCapacity];
+        x = new float[initialCapacity];
+        y = new float[initialCapacity];
+    }
+
+    public void add(long id, float nodeX, float nodeY) {
+        if (size == ids.length) resize(size * 2);
+        if (size > 0 && ids[size - 1] > id) sorted = false;
+        ids[size] = id;
+        x[size] = nodeX;
+        y[size] = nodeY;
+        size++;
+    }
+
+    private void resize(int newCapacity) {
+        ids = Arrays.copyOf(ids, newCapacity);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+    }
+
+    // Must be called after the last add and before any lookups.
+    // OSM files are usually sorted by id already, in which case this only trims the arrays.
+    public void seal() {
+        if (size < ids.length) resize(size);
+        if (!sorted) sort(0, size - 1);
+        sorted = true;
+        points = new Point[size];
+    }
+
+    // O(lg2(n))
+    public int indexOf(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if      (id < ids[middle]) high = middle - 1;
+            else if (id > ids[middle]) low = middle + 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    public float getX(int index) { return x[index]; }
+    public float getY(int index) { return y[index]; }
+    public long getId(int index) { return ids[index]; }
+    public int size() { return size; }
+
+    /**
+     * Returns the Point object for the node at the given index, creating it the first time it is needed.
+     * @param index index returned by indexOf
+     * @return the shared Point for the node
+     */
+    public Point materialize(int index) {
+        if (points[index] == null) points[index] = new Point(x[index], y[index], ids[index]);
+        return points[index];
+    }
+
+    /**
+     * Returns the Vertex object for the node at the given index. A node that has already been
+     * materialized as a plain Point is upgraded, so every way sharing the node gets the same Vertex.
+     * @param index index returned by indexOf
+     * @return the shared Vertex for the node
+     */
+    public Vertex materializeVertex(int index) {
+        if (!(points[index] instanceof Vertex)) points[index] = new Vertex(x[index], y[index], ids[index]);
+        return (Vertex) points[index];
+    }
+
+    // In-place quicksort over the parallel arrays, sorting by id
+    private void sort(int low, int high) {
+        while (low < high) {
+            if (high - low < 16) {
+                insertionSort(low, high);
+                return;
+            }
+            long pivot = medianOfThree(low, low + (high - low) / 2, high);
+            int i = low, j = high;
+            while (i <= j) {
+                while (ids[i] < pivot) i++;
+                while (ids[j] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            // Recurse into the smaller half to keep the stack depth logarithmic
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private long medianOfThree(int a, int b, int c) {
+        long ia = ids[a], ib = ids[b], ic = ids[c];
+        if (ia < ib) return ib < ic ? ib : Math.max(ia, ic);
+        return ia < ic ? ia : Math.max(ib, ic);
+    }
+
+    private void insertionSort(int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && ids[j - 1] > ids[j]; j--) swap(j, j - 1);
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+        float tx = x[a]; x[a] = x[b]; x[b] = tx;
+        float ty = y[a]; y[a] = y[b]; y[b] = ty;
+    }
+}
@@ -0,0 +1,147 @@
+package program.model;
+
+import program.shared.MapDebugMBR;
+import program.shared.MapElement;
+import program.shared.MapRoadSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read-only copy of an RTree laid out for queries. Nodes are numbered level by level, so the children of a node
+ * are a range of node ids and, since every leaf is on the bottom level, all ids from firstLeaf and up are leaves.
+ * The bounding boxes of all nodes are kept in one float array and the elements of the leaves in one element
+ * array, which means a query walks plain arrays, doesn't touch any node objects and allocates nothing.
+ */
+class PackedRTree {
+    // minX, minY, maxX, maxY of node i start at 4 * i
+    private final float[] bounds;
+    // Children of node i are the nodes, or for leaves the elements, firstChild[i] until firstChild[i] + childCount[i]
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int firstLeaf;
+    private final MapElement[] elements;
+    // Bounding box of element i at 4 * i, so leaves can be filtered without touching the elements
+    private final float[] elementBounds;
+    // End points ax, ay, bx, by of element i at 4 * i when it is a road segment, NaN otherwise
+    private final float[] segmentEnds;
+    // First node id of every level, only needed for the debug boxes
+    private final int[] levelStart;
+
+    PackedRTree(RTreeNode root) {
+        List<RTreeNode> nodes = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        List<RTreeNode> level = List.of(root);
+        int elementCount = 0;
+        while (true) {
+            starts.add(nodes.size());
+            nodes.addAll(level);
+            if (level.get(0).isLeaf()) break;
+            List<RTreeNode> next = new ArrayList<>();
+            for (RTreeNode node : level) next.addAll(node.children);
+            level = next;
+        }
+        for (RTreeNode leaf : level) elementCount += leaf.elements.size();
+
+        bounds = new float[nodes.size() * 4];
+        firstChild = new int[nodes.size()];
+        childCount = new int[nodes.size()];
+        elements = new MapElement[elementCount];
+        elementBounds = new float[elementCount * 4];
+        segmentEnds = new float[elementCount * 4];
+        firstLeaf = starts.get(starts.size() - 1);
+        levelStart = starts.stream().mapToInt(Integer::intValue).toArray();
+
+        int nextNode = 1, nextElement = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            RTreeNode node = nodes.get(i);
+            bounds[4 * i] = node.getMinPoint()[0];
+            bounds[4 * i + 1] = node.getMinPoint()[1];
+            bounds[4 * i + 2] = node.getMaxPoint()[0];
+            bounds[4 * i + 3] = node.getMaxPoint()[1];
+            if (i >= firstLeaf) {
+                firstChild[i] = nextElement;
+                childCount[i] = node.elements.size();
+                for (MapElement e : node.elements) addElement(nextElement++, e);
+            } else {
+                firstChild[i] = nextNode;
+                childCount[i] = node.children.size();
+                nextNode += node.children.size();
+            }
+        }
+    }
+
+    private void addElement(int i, MapElement e) {
+        elements[i] = e;
+        elementBounds[4 * i] = e.getMinPoint()[0];
+        elementBounds[4 * i + 1] = e.getMinPoint()[1];
+        elementBounds[4 * i + 2] = e.getMaxPoint()[0];
+        elementBounds[4 * i + 3] = e.getMaxPoint()[1];
+        if (e instanceof MapRoadSegment segment) {
+            segmentEnds[4 * i] = segment.getVertexA().getX();
+            segmentEnds[4 * i + 1] = segment.getVertexA().getY();
+            segmentEnds[4 * i + 2] = segment.getVertexB().getX();
+            segmentEnds[4 * i + 3] = segment.getVertexB().getY();
+        } else {
+            segmentEnds[4 * i] = Float.NaN;
+        }
+    }
+
+    int nodeCount() { return firstChild.length; }
+
+    /**
+     * Passes the elements in the leaves overlapping the query rectangle that pass the filter to action.
+     * The tree is only a handful of levels deep, so it is walked recursively rather than with an allocated stack.
+     * @param debugLevel internal nodes below this level are passed on as MapDebugMBR boxes, -1 to leave them out
+     */
+    void query(float[] min, float[] max, RTree.queryFilter filter, int debugLevel, Consumer<? super MapElement> action) {
+        visit(0, min, max, filter, debugLevel, action);
+    }
+
+    private void visit(int node, float[] min, float[] max, RTree.queryFilter filter, int debugLevel, Consumer<? super MapElement> action) {
+        int first = firstChild[node], end = first + childCount[node];
+        if (node >= firstLeaf) {
+            for (int i = first; i < end; i++) {
+                if (filter == RTree.queryFilter.LEAF || accepts(i, min, max, filter)) action.accept(elements[i]);
+            }
+            return;
+        }
+        for (int child = first; child < end; child++) {
+            if (overlaps(child, min, max)) visit(child, min, max, filter, debugLevel, action);
+        }
+        if (debugLevel >= 0 && level(node) > debugLevel) {
+            action.accept(new MapDebugMBR(new float[]{ bounds[4 * node], bounds[4 * node + 1] },
+                    new float[]{ bounds[4 * node + 2], bounds[4 * node + 3] }));
+        }
+    }
+
+    private boolean overlaps(int node, float[] min, float[] max) {
+        int b = 4 * node;
+        return bounds[b] <= max[0] && bounds[b + 2] >= min[0] && bounds[b + 1] <= max[1] && bounds[b + 3] >= min[1];
+    }
+
+    private boolean accepts(int element, float[] min, float[] max, RTree.queryFilter filter) {
+        int b = 4 * element;
+        if (elementBounds[b] > max[0] || elementBounds[b + 2] < min[0] || elementBounds[b + 1] > max[1] || elementBounds[b + 3] < min[1]) {
+            return false;
+        }
+        if (filter != RTree.queryFilter.CLIP || Float.isNaN(segmentEnds[b])) return true;
+
+        // With overlapping bounding boxes a segment misses the rectangle only if all four corners lie strictly on
+        // the same side of the line through it
+        float ax = segmentEnds[b], ay = segmentEnds[b + 1];
+        float dx = segmentEnds[b + 2] - ax, dy = segmentEnds[b + 3] - ay;
+        float c1 = dx * (min[1] - ay) - dy * (min[0] - ax);
+        float c2 = dx * (min[1] - ay) - dy * (max[0] - ax);
+        float c3 = dx * (max[1] - ay) - dy * (min[0] - ax);
+        float c4 = dx * (max[1] - ay) - dy * (max[0] - ax);
+        return !(c1 > 0 && c2 > 0 && c3 > 0 && c4 > 0) && !(c1 < 0 && c2 < 0 && c3 < 0 && c4 < 0);
+    }
+
+    private int level(int node) {
+        int level = 0;
+        while (level + 1 < levelStart.length && levelStart[level + 1] <= node) level++;
+        return level;
+    }
+}
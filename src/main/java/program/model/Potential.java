@@ -0,0 +1,27 @@
+package program.model;
+
+/**
+ * Directs a bidirectional search towards its ends. The forward search queues a vertex by its distance plus
+ * forward(v) and the backward search by its distance minus forward(v), so both searches agree on the reduced
+ * weight of every edge. As long as no reduced weight is negative the searches stay exact, and they may stop
+ * once the smallest keys of the two queues add up to the shortest path found.
+ */
+interface Potential {
+    // Plain bidirectional Dijkstra
+    Potential NONE = v -> 0;
+
+    float forward(int v);
+
+    /**
+     * Averages an estimate of the distance to the destination with an estimate of the distance from the source.
+     * Consistent estimates give a consistent potential for both directions.
+     */
+    static Potential average(Estimate toDestination, Estimate fromSource) {
+        return v -> (toDestination.estimate(v) - fromSource.estimate(v)) / 2;
+    }
+
+    // A lower bound of the distance between a fixed vertex and v
+    interface Estimate {
+        float estimate(int v);
+    }
+}
@@ -6,6 +6,7 @@ import program.shared.*;
 import java.io.Serializable;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class RTree implements Serializable {
     RTreeNode root;
@@ -16,6 +17,24 @@ public class RTree implements Serializable {
     private int level = 0;
 
     private int elements = 0;
+    // Array layout of the tree used by query, rebuilt on the first query after the tree has changed
+    private transient volatile PackedRTree packed;
+
+    public enum splitStrategy {
+        QUADRATIC, // Guttman's quadratic split
+        RSTAR // R*-tree: overlap-minimizing subtree choice, margin-based split and forced reinsertion
+    }
+    private splitStrategy strategy = splitStrategy.QUADRATIC;
+
+    public enum queryFilter {
+        LEAF, // every element of the leaves overlapping the query
+        BOUNDING_BOX, // elements whose own bounding box overlaps the query
+        CLIP // like BOUNDING_BOX, but road segments must also cross the query rectangle
+    }
+    private queryFilter filter = queryFilter.BOUNDING_BOX;
+
+    // Share of an overflowing node's entries that R* reinserts instead of splitting (30% in the R*-tree paper)
+    private static final float REINSERT_FRACTION = 0.3F;
 
     public RTree(int minChildren, int maxChildren) {
         root = new RTreeNode(maxChildren);
@@ -23,9 +42,33 @@ public class RTree implements Serializable {
         this.maxChildren = maxChildren;
     }
 
+    public RTree(int minChildren, int maxChildren, splitStrategy strategy) {
+        this(minChildren, maxChildren);
+        this.strategy = strategy;
+    }
+
+    // Used when a tree is read back from a map file
+    RTree(int minChildren, int maxChildren, splitStrategy strategy, RTreeNode root, int elements) {
+        this(minChildren, maxChildren, strategy);
+        this.root = root;
+        this.elements = elements;
+    }
+
     public RTreeNode getRoot() { return root; }
+    public int getMinChildren() { return minChildren; }
+    public int getMaxChildren() { return maxChildren; }
+    public int size() { return elements; }
+    public splitStrategy getSplitStrategy() { return strategy; }
+    public void setSplitStrategy(splitStrategy strategy) { this.strategy = strategy; }
+    public queryFilter getQueryFilter() { return filter; }
+    public void setQueryFilter(queryFilter filter) { this.filter = filter; }
 
     public void insert(MapElement element) {
+        packed = null;
+        if (strategy == splitStrategy.RSTAR) {
+            insertRStar(element);
+            return;
+        }
         elements++;
         RTreeNode node = root;
         Stack<RTreeNode> path = new Stack<>();
@@ -53,45 +96,320 @@ public class RTree implements Serializable {
         }
     }
 
-    public List<MapElement> query(float[] min, float[] max) {
-        List<MapElement> results = new ArrayList<>();
+    private void insertRStar(MapElement element) {
+        elements++;
+        // Forced reinsertion is only done once per level for each inserted element
+        BitSet reinsertedLevels = new BitSet();
+        ArrayDeque<IBoundingBox> reinsertEntries = new ArrayDeque<>();
+        ArrayDeque<Integer> reinsertLevels = new ArrayDeque<>();
+
+        insertEntry(element, 0, reinsertedLevels, reinsertEntries, reinsertLevels);
+        while (!reinsertEntries.isEmpty()) {
+            insertEntry(reinsertEntries.removeFirst(), reinsertLevels.removeFirst(), reinsertedLevels, reinsertEntries, reinsertLevels);
+        }
+    }
 
-        int currentLevel = 0;
+    // Levels are counted from the leaves (level 0), so they don't change when the root is split
+    private void insertEntry(IBoundingBox entry, int entryLevel, BitSet reinsertedLevels, ArrayDeque<IBoundingBox> reinsertEntries, ArrayDeque<Integer> reinsertLevels) {
+        RTreeNode sibling = insertEntry(root, height() - 1, entry, entryLevel, reinsertedLevels, reinsertEntries, reinsertLevels);
+        if (sibling != null) {
+            RTreeNode newRoot = new RTreeNode(maxChildren);
+            newRoot.children.add(root);
+            newRoot.children.add(sibling);
+            newRoot.updateBoundingBox();
+            root = newRoot;
+        }
+    }
 
-        ArrayDeque<RTreeNode> path = new ArrayDeque<>();
-        path.push(root);
-        while (!path.isEmpty()) {
-            RTreeNode current = path.removeFirst();
-            if (path.peekFirst() == null) {
-                currentLevel++;
+    // Returns the new sibling of node if it had to be split, otherwise null
+    private RTreeNode insertEntry(RTreeNode node, int nodeLevel, IBoundingBox entry, int entryLevel,
+                                  BitSet reinsertedLevels, ArrayDeque<IBoundingBox> reinsertEntries, ArrayDeque<Integer> reinsertLevels) {
+        if (nodeLevel == entryLevel) {
+            if (nodeLevel == 0) node.elements.add((MapElement) entry);
+            else node.children.add((RTreeNode) entry);
+        } else {
+            RTreeNode child = chooseSubtree(node, nodeLevel, entry);
+            RTreeNode sibling = insertEntry(child, nodeLevel - 1, entry, entryLevel, reinsertedLevels, reinsertEntries, reinsertLevels);
+            if (sibling != null) node.children.add(sibling);
+        }
+
+        node.updateBoundingBox();
+        if (entries(node).size() <= maxChildren) return null;
+
+        if (node != root && !reinsertedLevels.get(nodeLevel)) {
+            reinsertedLevels.set(nodeLevel);
+            removeFarthestEntries(node, nodeLevel, reinsertEntries, reinsertLevels);
+            return null;
+        }
+        return splitRStar(node);
+    }
+
+    private int height() {
+        int height = 1;
+        for (RTreeNode node = root; !node.isLeaf(); node = node.children.get(0)) height++;
+        return height;
+    }
+
+    private List<? extends IBoundingBox> entries(RTreeNode node) {
+        return node.isLeaf() ? node.elements : node.children;
+    }
+
+    // Above the leaves the child whose area grows least is picked. Just above the leaves the overlap with
+    // its siblings matters more, so the child whose overlap grows least is picked there.
+    private RTreeNode chooseSubtree(RTreeNode node, int nodeLevel, IBoundingBox entry) {
+        RTreeNode best = null;
+        float bestOverlap = Float.MAX_VALUE, bestEnlargement = Float.MAX_VALUE, bestArea = Float.MAX_VALUE;
+        for (RTreeNode child : node.children) {
+            float overlap = nodeLevel == 1 ? overlapEnlargement(child, entry, node.children) : 0;
+            float enlargement = calculateAreaIncrease(child.getMinPoint(), child.getMaxPoint(), entry.getMinPoint(), entry.getMaxPoint());
+            float area = calculateArea(child.getMinPoint(), child.getMaxPoint());
+            if (overlap < bestOverlap
+                    || overlap == bestOverlap && (enlargement < bestEnlargement || enlargement == bestEnlargement && area < bestArea)) {
+                best = child;
+                bestOverlap = overlap;
+                bestEnlargement = enlargement;
+                bestArea = area;
             }
-            if (current.isLeaf()) {
-                /*for (MapElement e : current.elements) {
-                    if (hasOverlap(min, max, e.getMinPoint(), e.getMaxPoint())) results.add(e);
-                }*/
-                results.addAll(current.elements);
-            } else {
-                for (RTreeNode n : current.children) {
-                    if (hasOverlap(min, max, n.getMinPoint(), n.getMaxPoint())) path.addFirst(n);
+        }
+        return best;
+    }
+
+    private float overlapEnlargement(RTreeNode child, IBoundingBox entry, List<RTreeNode> siblings) {
+        float[] min = child.getMinPoint(), max = child.getMaxPoint();
+        float[] grownMin = { Math.min(min[0], entry.getMinPoint()[0]), Math.min(min[1], entry.getMinPoint()[1]) };
+        float[] grownMax = { Math.max(max[0], entry.getMaxPoint()[0]), Math.max(max[1], entry.getMaxPoint()[1]) };
+        float enlargement = 0;
+        for (RTreeNode sibling : siblings) {
+            if (sibling == child) continue;
+            enlargement += overlapArea(grownMin, grownMax, sibling.getMinPoint(), sibling.getMaxPoint())
+                    - overlapArea(min, max, sibling.getMinPoint(), sibling.getMaxPoint());
+        }
+        return enlargement;
+    }
+
+    // Takes out the entries whose centers lie farthest from the node's center, closest ones are reinserted first
+    private void removeFarthestEntries(RTreeNode node, int nodeLevel, ArrayDeque<IBoundingBox> reinsertEntries, ArrayDeque<Integer> reinsertLevels) {
+        float centerX = (node.getMinPoint()[0] + node.getMaxPoint()[0]) / 2;
+        float centerY = (node.getMinPoint()[1] + node.getMaxPoint()[1]) / 2;
+        List<IBoundingBox> sorted = new ArrayList<>(entries(node));
+        sorted.sort(Comparator.comparingDouble((IBoundingBox e) -> {
+            float dx = (e.getMinPoint()[0] + e.getMaxPoint()[0]) / 2 - centerX;
+            float dy = (e.getMinPoint()[1] + e.getMaxPoint()[1]) / 2 - centerY;
+            return dx * dx + dy * dy;
+        }));
+
+        int removeCount = Math.max(1, Math.round(REINSERT_FRACTION * maxChildren));
+        int keep = sorted.size() - removeCount;
+        setEntries(node, sorted.subList(0, keep));
+        node.updateBoundingBox();
+        for (int i = keep; i < sorted.size(); i++) {
+            reinsertEntries.addLast(sorted.get(i));
+            reinsertLevels.addLast(nodeLevel);
+        }
+    }
+
+    private void setEntries(RTreeNode node, List<IBoundingBox> entries) {
+        if (node.isLeaf()) node.elements = copyOf(entries, MapElement.class);
+        else node.children = copyOf(entries, RTreeNode.class);
+    }
+
+    // The entries of a leaf or an inner node, which are all of the given type
+    private static <T extends IBoundingBox> List<T> copyOf(List<IBoundingBox> entries, Class<T> type) {
+        List<T> copy = new ArrayList<>(entries.size());
+        for (IBoundingBox entry : entries) copy.add(type.cast(entry));
+        return copy;
+    }
+
+    // R* split: pick the axis whose distributions have the smallest total margin, then the distribution
+    // along that axis with the least overlap between the two groups (ties broken by total area)
+    private RTreeNode splitRStar(RTreeNode node) {
+        boolean leaf = node.isLeaf();
+        List<IBoundingBox> entries = new ArrayList<>(entries(node));
+        int min = Math.min(minChildren, entries.size() / 2);
+
+        int bestAxis = 0;
+        float bestMargin = Float.MAX_VALUE;
+        for (int axis = 0; axis < 2; axis++) {
+            float margin = 0;
+            for (Comparator<IBoundingBox> order : axisOrders(axis)) {
+                entries.sort(order);
+                float[][] prefix = prefixBounds(entries), suffix = suffixBounds(entries);
+                for (int split = min; split <= entries.size() - min; split++) {
+                    margin += margin(prefix[split - 1]) + margin(suffix[split]);
                 }
-                if (debug && currentLevel > level) {
-                    results.add(new MapDebugMBR(current.getMinPoint(), current.getMaxPoint()));
+            }
+            if (margin < bestMargin) {
+                bestMargin = margin;
+                bestAxis = axis;
+            }
+        }
+
+        Comparator<IBoundingBox> bestOrder = null;
+        int bestSplit = min;
+        float bestOverlap = Float.MAX_VALUE, bestArea = Float.MAX_VALUE;
+        for (Comparator<IBoundingBox> order : axisOrders(bestAxis)) {
+            entries.sort(order);
+            float[][] prefix = prefixBounds(entries), suffix = suffixBounds(entries);
+            for (int split = min; split <= entries.size() - min; split++) {
+                float[] a = prefix[split - 1], b = suffix[split];
+                float overlap = overlapArea(new float[]{ a[0], a[1] }, new float[]{ a[2], a[3] }, new float[]{ b[0], b[1] }, new float[]{ b[2], b[3] });
+                float area = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]);
+                if (overlap < bestOverlap || overlap == bestOverlap && area < bestArea) {
+                    bestOverlap = overlap;
+                    bestArea = area;
+                    bestOrder = order;
+                    bestSplit = split;
                 }
             }
         }
 
+        entries.sort(bestOrder);
+        RTreeNode newNode = new RTreeNode(maxChildren);
+        if (leaf) newNode.elements = copyOf(entries.subList(bestSplit, entries.size()), MapElement.class);
+        else newNode.children = copyOf(entries.subList(bestSplit, entries.size()), RTreeNode.class);
+        setEntries(node, entries.subList(0, bestSplit));
+        node.updateBoundingBox();
+        newNode.updateBoundingBox();
+        return newNode;
+    }
+
+    // Entries sorted by their lower and by their upper value on the axis
+    private List<Comparator<IBoundingBox>> axisOrders(int axis) {
+        return List.of(
+                Comparator.comparingDouble((IBoundingBox e) -> e.getMinPoint()[axis]).thenComparingDouble(e -> e.getMaxPoint()[axis]),
+                Comparator.comparingDouble((IBoundingBox e) -> e.getMaxPoint()[axis]).thenComparingDouble(e -> e.getMinPoint()[axis]));
+    }
+
+    // prefix[i] is the bounding box { minX, minY, maxX, maxY } of entries 0..i
+    private float[][] prefixBounds(List<IBoundingBox> entries) {
+        float[][] bounds = new float[entries.size()][];
+        float[] current = { Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int i = 0; i < entries.size(); i++) {
+            current = grow(current, entries.get(i));
+            bounds[i] = current;
+        }
+        return bounds;
+    }
+
+    // suffix[i] is the bounding box { minX, minY, maxX, maxY } of entries i..n-1
+    private float[][] suffixBounds(List<IBoundingBox> entries) {
+        float[][] bounds = new float[entries.size()][];
+        float[] current = { Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            current = grow(current, entries.get(i));
+            bounds[i] = current;
+        }
+        return bounds;
+    }
+
+    private float[] grow(float[] bounds, IBoundingBox e) {
+        return new float[]{
+                Math.min(bounds[0], e.getMinPoint()[0]), Math.min(bounds[1], e.getMinPoint()[1]),
+                Math.max(bounds[2], e.getMaxPoint()[0]), Math.max(bounds[3], e.getMaxPoint()[1]) };
+    }
+
+    private float margin(float[] bounds) {
+        return (bounds[2] - bounds[0]) + (bounds[3] - bounds[1]);
+    }
+
+    private float overlapArea(float[] aMin, float[] aMax, float[] bMin, float[] bMax) {
+        float width = Math.min(aMax[0], bMax[0]) - Math.max(aMin[0], bMin[0]);
+        float height = Math.min(aMax[1], bMax[1]) - Math.max(aMin[1], bMin[1]);
+        return width <= 0 || height <= 0 ? 0 : width * height;
+    }
+
+    /**
+     * Rebuilds the tree with Sort-Tile-Recursive packing, adding the given elements to the ones already in the tree.
+     * Elements are sorted into vertical slices by x, each slice is sorted by y and cut into full leaves,
+     * and the same is repeated for every level above until a single root is left. This runs in O(n log n)
+     * and gives nodes with far less overlap than inserting the elements one at a time.
+     * @param newElements elements to add to the tree
+     */
+    public void bulkLoad(Collection<? extends MapElement> newElements) {
+        packed = null;
+        List<MapElement> all = new ArrayList<>(elements + newElements.size());
+        collectElements(root, all);
+        all.addAll(newElements);
+        elements = all.size();
+
+        List<RTreeNode> level = new ArrayList<>();
+        for (List<MapElement> group : tile(all)) {
+            RTreeNode leaf = new RTreeNode(maxChildren);
+            leaf.elements.addAll(group);
+            leaf.updateBoundingBox();
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            List<RTreeNode> parents = new ArrayList<>();
+            for (List<RTreeNode> group : tile(level)) {
+                RTreeNode parent = new RTreeNode(maxChildren);
+                parent.children.addAll(group);
+                parent.updateBoundingBox();
+                parents.add(parent);
+            }
+            level = parents;
+        }
+        root = level.isEmpty() ? new RTreeNode(maxChildren) : level.get(0);
+    }
+
+    // Groups the entries into runs of at most maxChildren that are close to each other (one STR level)
+    private <type extends IBoundingBox> List<List<type>> tile(List<type> entries) {
+        int nodeCount = (int) Math.ceil(entries.size() / (double) maxChildren);
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * maxChildren;
+
+        entries.sort(Comparator.comparingDouble(e -> e.getMinPoint()[0] + e.getMaxPoint()[0]));
+        List<List<type>> groups = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < entries.size(); sliceStart += sliceSize) {
+            List<type> slice = entries.subList(sliceStart, Math.min(sliceStart + sliceSize, entries.size()));
+            slice.sort(Comparator.comparingDouble(e -> e.getMinPoint()[1] + e.getMaxPoint()[1]));
+            for (int start = 0; start < slice.size(); start += maxChildren) {
+                groups.add(new ArrayList<>(slice.subList(start, Math.min(start + maxChildren, slice.size()))));
+            }
+        }
+        return groups;
+    }
+
+    List<MapElement> getElements() {
+        List<MapElement> results = new ArrayList<>(elements);
+        collectElements(root, results);
         return results;
     }
 
+    private void collectElements(RTreeNode node, List<MapElement> results) {
+        if (node.isLeaf()) results.addAll(node.elements);
+        else for (RTreeNode child : node.children) collectElements(child, results);
+    }
+
+    public List<MapElement> query(float[] min, float[] max) {
+        List<MapElement> results = new ArrayList<>();
+        query(min, max, results::add);
+        return results;
+    }
+
+    /**
+     * Passes the elements overlapping the rectangle, as decided by the query filter, to action without building a result list.
+     */
+    public void query(float[] min, float[] max, Consumer<? super MapElement> action) {
+        packed().query(min, max, filter, debug ? level : -1, action);
+    }
+
+    PackedRTree packed() {
+        PackedRTree current = packed;
+        if (current == null) {
+            synchronized (this) {
+                if (packed == null) packed = new PackedRTree(root);
+                current = packed;
+            }
+        }
+        return current;
+    }
+
     public MapElement findNearestNeighbor(MapPoint point) {
         float[] q = point.getMinPoint();
         PriorityQueue<NodeDistanceInfo<RTreeNode>> nearestNodes = new PriorityQueue<>();
-        NodeDistanceInfo<RTreeNode> mmd = null;
-
-        if (!root.isLeaf()){
-            enqueueChildNodes(nearestNodes, root.children, q);
-            mmd = nearestNodes.peek();
-        }
+        nearestNodes.add(new NodeDistanceInfo<>(q, root));
+        NodeDistanceInfo<RTreeNode> mmd = nearestNodes.peek();
 
         float nnDist = Float.MAX_VALUE;
         MapElement nearestNeighbor = null;
@@ -103,7 +421,8 @@ public class RTree implements Serializable {
                 mmd = current;
 
             }
-            if (nearestNeighbor != null && current.minDist > nnDist) continue;
+            // minDist is squared
+            if (nearestNeighbor != null && current.minDist > nnDist * nnDist) continue;
             if (!current.node.isLeaf()) enqueueChildNodes(nearestNodes, current.node.children, q);
             else {
                 PriorityQueue<NodeDistanceInfo<MapElement>> elements = new PriorityQueue<>();
@@ -112,8 +431,10 @@ public class RTree implements Serializable {
                     NodeDistanceInfo<MapElement> elementInfo = elements.poll();
                     MapElement element = elementInfo.node;
                     //if (elementInfo.minDist > nnDist) continue;
+                    // Only road segments have a distance to measure, whole roads and shapes are passed over
+                    if (!(element instanceof MapRoadSegment segment)) continue;
 
-                    float distToLine = RTreeMath.pointToRoadDistance(q, (MapRoadSegment) element);
+                    float distToLine = RTreeMath.pointToRoadDistance(q, segment);
                     if (distToLine < nnDist) {
                         nearestNeighbor = element;
                         nnDist = distToLine;
@@ -162,7 +483,18 @@ public class RTree implements Serializable {
         children.remove(candidates.getKey());
         children.remove(candidates.getValue());
 
-        for (type c : children) {
+        for (int i = 0; i < children.size(); i++) {
+            type c = children.get(i);
+            // If one group needs every remaining entry to reach minChildren, it gets them
+            int remaining = children.size() - i;
+            if (candidate1Children.size() + remaining <= minChildren) {
+                candidate1Children.add(c);
+                continue;
+            }
+            if (candidate2Children.size() + remaining <= minChildren) {
+                candidate2Children.add(c);
+                continue;
+            }
             float c1Area = calculateAreaIncrease(
                     candidates.getKey().getMinPoint(),
                     candidates.getKey().getMaxPoint(),
@@ -172,8 +504,6 @@ public class RTree implements Serializable {
                     candidates.getValue().getMaxPoint(),
                     c.getMinPoint(), c.getMaxPoint());
 
-            //if (candidate1Children.size() < minChildren) candidate1Children.add(c);
-            //else if (candidate2Children.size() < minChildren) candidate2Children.add(c);
             if (c1Area > c2Area) {
                 candidate2Children.add(c);
             } else {
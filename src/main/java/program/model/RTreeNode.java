@@ -17,12 +17,17 @@ public class RTreeNode implements IBoundingBox, Serializable {
         children = new ArrayList<>(maxChildren);
         elements = new ArrayList<>(maxChildren);
         min = new float[]{ Float.MAX_VALUE, Float.MAX_VALUE };
-        max = new float[]{ Float.MIN_VALUE, Float.MIN_VALUE };
+        max = new float[]{ -Float.MAX_VALUE, -Float.MAX_VALUE };
     }
 
     public float[] getMinPoint() { return min; }
     public float[] getMaxPoint() { return max; }
 
+    void setBoundingBox(float[] min, float[] max) {
+        this.min = min;
+        this.max = max;
+    }
+
     public void addElement (MapElement e) {
         elements.add(e);
         if (elements.size() <= maxChildren) updateBoundingBox();
@@ -34,7 +39,7 @@ public class RTreeNode implements IBoundingBox, Serializable {
     }
 
     public void updateBoundingBox() {
-        float xMin = Float.MAX_VALUE, yMin = Float.MAX_VALUE, xMax = Float.MIN_VALUE, yMax = Float.MIN_VALUE;
+        float xMin = Float.MAX_VALUE, yMin = Float.MAX_VALUE, xMax = -Float.MAX_VALUE, yMax = -Float.MAX_VALUE;
 
         for (IBoundingBox n : isLeaf() ? elements : children) {
             xMin = Math.min(n.getMinPoint()[0], xMin);
@@ -43,8 +48,11 @@ public class RTreeNode implements IBoundingBox, Serializable {
             yMax = Math.max(n.getMaxPoint()[1], yMax);
         }
 
-        min = new float[]{ xMin, yMin };
-        max = new float[]{ xMax, yMax };
+        // Updated in place, this runs for every node on the path of each insert
+        min[0] = xMin;
+        min[1] = yMin;
+        max[0] = xMax;
+        max[1] = yMax;
     }
 
     public boolean isLeaf() {
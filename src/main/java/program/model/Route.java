@@ -0,0 +1,29 @@
+package program.model;
+
+import program.shared.MapRoadSegment;
+
+import java.util.List;
+
+/**
+ * A planned route: the road segments from start to end, the turn instructions along them and the total
+ * weight for the mode of transport it was planned for. The number of vertices the search settled tells
+ * how much work finding it took.
+ */
+public class Route {
+    private final List<MapRoadSegment> path;
+    private final Iterable<String> instructions;
+    private final float length;
+    private final int settledCount;
+
+    Route(List<MapRoadSegment> path, Iterable<String> instructions, float length, int settledCount) {
+        this.path = path;
+        this.instructions = instructions;
+        this.length = length;
+        this.settledCount = settledCount;
+    }
+
+    public List<MapRoadSegment> getPath() { return path; }
+    public Iterable<String> getInstructions() { return instructions; }
+    public float getLength() { return length; }
+    public int getSettledCount() { return settledCount; }
+}
@@ -0,0 +1,142 @@
+package program.model;
+
+import program.shared.MapPoint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Plans routes on the road graph of a storage. The graph and the R-trees are only read, and every search
+ * borrows its own search spaces from a pool, so any number of threads may plan routes at once.
+ * The pool keeps the spaces of finished searches up to a pair per processor and lets the rest be collected.
+ */
+public class RoutePlanner {
+    private static final int MAX_IDLE_SPACES = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final TreeStorage storage;
+    private final BlockingQueue<SearchSpace> idleSpaces = new ArrayBlockingQueue<>(MAX_IDLE_SPACES);
+
+    public enum algorithm {
+        DIJKSTRA, // Bidirectional Dijkstra
+        A_STAR, // Bidirectional A* towards the straight line distance, same routes with far fewer vertices settled
+        ALT, // Bidirectional A* towards bounds from the landmark distance tables, fewer vertices still
+        CH // Upward searches on the contraction hierarchy, a few hundred vertices for any route
+    }
+
+    public RoutePlanner(TreeStorage storage) {
+        this.storage = storage;
+    }
+
+    public Route planRoute(MapPoint from, MapPoint to, Model.MOT modeOfTransport) {
+        return planRoute(from, to, modeOfTransport, algorithm.CH);
+    }
+
+    /**
+     * Plans the route between the road vertices nearest to the two points. Safe to call from any thread.
+     * @throws IllegalArgumentException if no road is near a point, the points are nearest to the same vertex or no route connects them
+     */
+    public Route planRoute(MapPoint from, MapPoint to, Model.MOT modeOfTransport, algorithm algorithm) {
+        Graph graph = storage.getGraph();
+        int start = storage.nearestVertex(from).getIndex();
+        int end = storage.nearestVertex(to).getIndex();
+
+        SearchSpace forward = borrowSpace(graph), backward = borrowSpace(graph);
+        try {
+            if (algorithm == RoutePlanner.algorithm.CH) {
+                ContractionHierarchy hierarchy = storage.getContractionHierarchy(Graph.metric(modeOfTransport));
+                ContractionHierarchyDijkstra search = new ContractionHierarchyDijkstra(graph, hierarchy, start, end, forward, backward);
+                return new Route(search.getPath(), search.getInstructions(), search.currentShortestPathLength, search.getSettledCount());
+            }
+            Potential potential = switch (algorithm) {
+                case A_STAR -> GeographicPotential.of(graph, start, end, modeOfTransport);
+                case ALT -> storage.getLandmarks().potential(start, end, modeOfTransport);
+                default -> Potential.NONE;
+            };
+            BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, start, end, modeOfTransport, forward, backward, potential);
+            return new Route(bididi.getPath(), bididi.getInstructions(), bididi.currentShortestPathLength, bididi.getSettledCount());
+        } finally {
+            returnSpace(forward);
+            returnSpace(backward);
+        }
+    }
+
+    /**
+     * Plans the route between the road vertices nearest to the two points by the metric, on the hierarchy
+     * customized to it. The first route by a metric customizes the hierarchy, which takes a few seconds on
+     * a large map. Safe to call from any thread.
+     * @throws IllegalArgumentException if no road is near a point, the points are nearest to the same vertex or no route connects them
+     */
+    public Route planRoute(MapPoint from, MapPoint to, Metric metric) {
+        Graph graph = storage.getGraph();
+        int start = storage.nearestVertex(from).getIndex();
+        int end = storage.nearestVertex(to).getIndex();
+        ContractionHierarchy hierarchy = storage.getCustomizedHierarchy(metric);
+
+        SearchSpace forward = borrowSpace(graph), backward = borrowSpace(graph);
+        try {
+            ContractionHierarchyDijkstra search = new ContractionHierarchyDijkstra(graph, hierarchy, start, end, forward, backward);
+            return new Route(search.getPath(), search.getInstructions(), search.currentShortestPathLength, search.getSettledCount());
+        } finally {
+            returnSpace(forward);
+            returnSpace(backward);
+        }
+    }
+
+    /**
+     * The distance from the road vertex nearest to each source to the one nearest to each target, by the
+     * weights of the mode of transport. The matrix costs a search per source and per target on the
+     * contraction hierarchy, not one per pair, and the searches run in parallel on the common fork/join pool.
+     * @return the distances by source and then target, infinite where no route connects them or a point has no road
+     */
+    public float[][] distanceMatrix(List<MapPoint> sources, List<MapPoint> targets, Model.MOT modeOfTransport) {
+        Graph graph = storage.getGraph();
+        ContractionHierarchy hierarchy = storage.getContractionHierarchy(Graph.metric(modeOfTransport));
+        return DistanceMatrix.compute(hierarchy, nearestVertices(sources), nearestVertices(targets), () -> borrowSpace(graph), this::returnSpace);
+    }
+
+    // The vertex nearest to each point, -1 for points without a road, so one such point doesn't fail the matrix
+    private int[] nearestVertices(List<MapPoint> points) {
+        int[] vertices = new int[points.size()];
+        for (int i = 0; i < vertices.length; i++) {
+            try {
+                vertices[i] = storage.nearestVertex(points.get(i)).getIndex();
+            } catch (IllegalArgumentException e) {
+                vertices[i] = -1;
+            }
+        }
+        return vertices;
+    }
+
+    private SearchSpace borrowSpace(Graph graph) {
+        SearchSpace space = idleSpaces.poll();
+        // Spaces left over from another graph are dropped
+        while (space != null && space.size() != graph.vertexCount()) space = idleSpaces.poll();
+        return space != null ? space : new SearchSpace(graph.vertexCount());
+    }
+
+    // Keeps the space for the next search, unless the pool is full
+    private void returnSpace(SearchSpace space) {
+        idleSpaces.offer(space);
+    }
+
+    /**
+     * Plans the route from each point in from to the point at the same index in to. The routes are planned
+     * at the same time on the common fork/join pool.
+     * @return the routes in the order of the points, null where no route exists
+     */
+    public List<Route> planRoutes(List<MapPoint> from, List<MapPoint> to, Model.MOT modeOfTransport, algorithm algorithm) {
+        if (from.size() != to.size()) throw new IllegalArgumentException("Got " + from.size() + " starts but " + to.size() + " ends");
+        Route[] routes = new Route[from.size()];
+        IntStream.range(0, routes.length).parallel().forEach(i -> {
+            try {
+                routes[i] = planRoute(from.get(i), to.get(i), modeOfTransport, algorithm);
+            } catch (IllegalArgumentException e) {
+                routes[i] = null;
+            }
+        });
+        return Arrays.asList(routes);
+    }
+}
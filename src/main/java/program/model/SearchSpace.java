@@ -0,0 +1,61 @@
+package program.model;
+
+import java.util.Arrays;
+
+/**
+ * Distances, predecessor edges and the queue of one direction of a route search, indexed by vertex id.
+ * Instead of clearing the arrays between searches every entry is stamped with the search that wrote it,
+ * and entries with an older stamp read as unreached, so starting a search costs nothing however large
+ * the graph is. A search space belongs to one search at a time; searches running at the same time each
+ * need their own.
+ */
+class SearchSpace {
+    private final float[] distTo;
+    private final int[] edgeTo;
+    private final int[] stamp;
+    private int generation = 0;
+    final IndexedMinHeap queue;
+
+    SearchSpace(int vertexCount) {
+        distTo = new float[vertexCount];
+        edgeTo = new int[vertexCount];
+        stamp = new int[vertexCount];
+        queue = new IndexedMinHeap(vertexCount);
+    }
+
+    /**
+     * Forgets every vertex reached by the previous search.
+     */
+    void reset() {
+        queue.clear();
+        generation++;
+        // After 2^31 searches the stamps wrap around, so clear them once instead
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    boolean isReached(int v) {
+        return stamp[v] == generation;
+    }
+
+    float distTo(int v) {
+        return stamp[v] == generation ? distTo[v] : Float.POSITIVE_INFINITY;
+    }
+
+    // The edge the vertex was reached by, -1 for the vertex the search started from
+    int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    void set(int v, float dist, int edge) {
+        distTo[v] = dist;
+        edgeTo[v] = edge;
+        stamp[v] = generation;
+    }
+
+    int size() {
+        return distTo.length;
+    }
+}
@@ -3,9 +3,17 @@ package program.model;
 import program.shared.*;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 public class TreeStorage implements Serializable {
     // Store multiple R-trees according to layers
@@ -16,6 +24,12 @@ public class TreeStorage implements Serializable {
 
     int elementCount = 0;
 
+    // Elements waiting to be bulk loaded, per tree. Null unless a bulk load is in progress.
+    private transient Map<RTree, List<MapElement>> pending;
+
+    // Query the layers concurrently instead of one after the other
+    private boolean parallelQuery = false;
+
     // Find a meaningful way to store data in multiple R-trees.
     // This is just an example of some layers that could make sense to store individually.
     // Roads
@@ -29,60 +43,130 @@ public class TreeStorage implements Serializable {
     RTree coastline; // Coastlines - drawn to give Denmark it's beautiful shape
     RTree other; // For everything else :)
 
+    // Generalized geometry for LOW detail, built from the trees above by Generalizer
+    RTree generalizedCoastline; // Coastline ways chained and simplified
+    RTree generalizedPrimary; // Primary roads chained into polylines and simplified
+
+    // Routing
+    RTree roadSegments; // Every road segment, for finding the nearest road. Never drawn.
+    private transient Graph graph = new Graph.Builder().build(); // Stored by MapFile
+    // Read without locking by every route query, so they are published through volatile fields and the
+    // monitor is only taken to build them once
+    private transient volatile Landmarks landmarks; // Stored by MapFile, selected on first use otherwise
+    private transient volatile ContractionHierarchy[] hierarchies; // Per metric, stored by MapFile, built on first use otherwise
+    private transient volatile CustomizableHierarchy customizable; // Stored by MapFile, built on first use otherwise
+    private transient volatile ConcurrentMap<Metric, CompletableFuture<ContractionHierarchy>> customized = new ConcurrentHashMap<>(); // Customized on first use
+
     public enum detail {
         LOW,
         MEDIUM,
         HIGH
     }
 
+    // The order of the layers is the order the trees are stored in a map file
+    public enum layer {
+        PRIMARY,
+        SECONDARY,
+        TERTIARY,
+        OTHER_ROADS,
+        BUILDINGS,
+        COASTLINE,
+        OTHER,
+        GENERALIZED_COASTLINE,
+        GENERALIZED_PRIMARY,
+        ROAD_SEGMENTS
+    }
+
+    // Run RTreeFanOutBenchmark on an extract before changing this
+    public static final int DEFAULT_MAX_CHILDREN = 4;
+
     public TreeStorage() {
-        // Use testing to change these values or take them as parameters
-        int minChildren = 2, maxChildren = 4;
-        primary = new RTree(minChildren, maxChildren);
-        secondary = new RTree(minChildren, maxChildren);
-        tertiary = new RTree(minChildren, maxChildren);
-        buildings = new RTree(minChildren, maxChildren);
-        otherRoads = new RTree(minChildren, maxChildren);
-        coastline = new RTree(minChildren, maxChildren);
-        other = new RTree(minChildren, maxChildren);
+        this(new EnumMap<>(layer.class));
+    }
+
+    /**
+     * Creates a storage where each layer's R-tree has its own fan-out.
+     * @param maxChildren maximum number of children per node for each layer, layers left out use DEFAULT_MAX_CHILDREN
+     */
+    public TreeStorage(Map<layer, Integer> maxChildren) {
+        primary = createTree(layer.PRIMARY, maxChildren);
+        secondary = createTree(layer.SECONDARY, maxChildren);
+        tertiary = createTree(layer.TERTIARY, maxChildren);
+        otherRoads = createTree(layer.OTHER_ROADS, maxChildren);
+        buildings = createTree(layer.BUILDINGS, maxChildren);
+        coastline = createTree(layer.COASTLINE, maxChildren);
+        other = createTree(layer.OTHER, maxChildren);
+        generalizedCoastline = createTree(layer.GENERALIZED_COASTLINE, maxChildren);
+        generalizedPrimary = createTree(layer.GENERALIZED_PRIMARY, maxChildren);
+        roadSegments = createTree(layer.ROAD_SEGMENTS, maxChildren);
 
         // Use debug value to decide whether to draw debugging MBRs
         // TODO: implement this
     }
 
-    public List<MapElement> query(float[] min, float[] max, detail detail) {
-        List<MapElement> drawFirst = new ArrayList<>();
-        List<MapElement> drawLast = new ArrayList<>();
-
-        switch (detail) {
-            case HIGH:
-                drawLast.addAll(other.query(min, max));
-                drawLast.addAll(otherRoads.query(min, max));
-                drawLast.addAll(buildings.query(min, max));
-            case MEDIUM:
-                drawLast.addAll(tertiary.query(min, max));
-                drawLast.addAll(secondary.query(min, max));
-                drawLast.addAll(primary.query(min, max));
-            case LOW:
-                drawFirst.addAll(coastline.query(min, max));
-                break;
-        }
+    private static RTree createTree(layer layer, Map<layer, Integer> maxChildren) {
+        int max = maxChildren.getOrDefault(layer, DEFAULT_MAX_CHILDREN);
+        if (max < 2) throw new IllegalArgumentException("A node needs room for at least 2 children, got " + max + " for " + layer);
+        // Keep nodes at least 40% full, but never below the 2 children a split needs
+        int min = Math.max(2, max * 2 / 5);
+        // Bulk loading ignores the split strategy, R* keeps the trees in shape for elements inserted afterwards
+        return new RTree(min, max, RTree.splitStrategy.RSTAR);
+    }
 
-        List<MapElement> results = new ArrayList<>();
-        results.addAll(drawFirst);
-        results.addAll(drawLast);
+    public RTree getTree(layer layer) {
+        return trees()[layer.ordinal()];
+    }
 
+    public List<MapElement> query(float[] min, float[] max, detail detail) {
+        List<MapElement> results = new ArrayList<>();
+        query(min, max, detail, results::add);
         return results;
     }
 
+    /**
+     * Streams the elements to draw for the rectangle to action in draw order, coastline first and primary roads last.
+     * Nothing is collected on the way, so a caller reusing its consumer allocates nothing per frame.
+     * With parallel queries on, the layers are queried at the same time on the common fork/join pool into
+     * one list each, and the lists are then passed to action in draw order.
+     */
+    public void query(float[] min, float[] max, detail detail, Consumer<? super MapElement> action) {
+        RTree[] layers = drawOrder(detail);
+        if (!parallelQuery) {
+            for (RTree tree : layers) tree.query(min, max, action);
+            return;
+        }
+        List<List<MapElement>> results = Arrays.stream(layers).parallel().map(tree -> tree.query(min, max)).toList();
+        for (List<MapElement> result : results) result.forEach(action);
+    }
+
+    private RTree[] drawOrder(detail detail) {
+        return switch (detail) {
+            // Storages filled without a bulk load have no generalized layers, they draw the full coastline
+            case LOW -> generalizedCoastline.size() + generalizedPrimary.size() > 0
+                    ? new RTree[]{ generalizedCoastline, generalizedPrimary }
+                    : new RTree[]{ coastline };
+            case MEDIUM -> new RTree[]{ coastline, tertiary, secondary, primary };
+            case HIGH -> new RTree[]{ coastline, other, otherRoads, buildings, tertiary, secondary, primary };
+        };
+    }
+
+    public boolean isParallelQuery() { return parallelQuery; }
+    public void setParallelQuery(boolean parallelQuery) { this.parallelQuery = parallelQuery; }
+
+    /**
+     * The road segment nearest to the point. Safe to call from any thread.
+     * @throws IllegalArgumentException if the storage holds no road segments
+     */
     public MapRoadSegment nearestNeighbor(MapPoint q) {
-        var start = System.nanoTime();
         List<MapRoadSegment> nearestSegments = new ArrayList<>();
-        // Add from all road trees
-        nearestSegments.add((MapRoadSegment) primary.findNearestNeighbor(q));
-        nearestSegments.add((MapRoadSegment) secondary.findNearestNeighbor(q));
-        nearestSegments.add((MapRoadSegment) tertiary.findNearestNeighbor(q));
-        nearestSegments.add((MapRoadSegment) otherRoads.findNearestNeighbor(q));
+        // Storages filled segment by segment have no segment tree, their segments are in the road trees
+        RTree[] roadTrees = roadSegments.size() > 0
+                ? new RTree[]{ roadSegments }
+                : new RTree[]{ primary, secondary, tertiary, otherRoads };
+        for (RTree tree : roadTrees) {
+            MapElement nearest = tree.findNearestNeighbor(q);
+            if (nearest != null) nearestSegments.add((MapRoadSegment) nearest);
+        }
 
         MapRoadSegment nnRoad = null; // TODO: maybe give this another name?
         float nnDist = Float.POSITIVE_INFINITY;
@@ -92,7 +176,7 @@ public class TreeStorage implements Serializable {
 
         while (!nearestNodes.isEmpty()) {
             NodeDistanceInfo<MapRoadSegment> curr = nearestNodes.poll();
-            if (curr.minDist > nnDist) continue;
+            if (curr.minDist > nnDist * nnDist) continue;
 
             float distToLine = RTreeMath.pointToRoadDistance(q.getMinPoint(), curr.node);
             if (distToLine < nnDist) {
@@ -102,10 +186,7 @@ public class TreeStorage implements Serializable {
             }
         }
 
-        System.out.println((System.nanoTime() - start) / 1000000);
-
-        System.out.println(nnRoad.getName());
-
+        if (nnRoad == null) throw new IllegalArgumentException("No road near " + Arrays.toString(q.getMinPoint()));
         return nnRoad;
     }
 
@@ -119,19 +200,153 @@ public class TreeStorage implements Serializable {
 
     public void insert(MapElement element, String type) {
         elementCount++;
-        switch (element.getType()) {
-            case "coastline" -> coastline.insert(element);
-            case "building" -> buildings.insert(element);
-            case "primary" -> primary.insert(element);
-            case "secondary" -> secondary.insert(element);
-            case "tertiary" -> tertiary.insert(element);
-            default -> {
-                if (type.equals("highway")) otherRoads.insert(element);
-                else other.insert(element);
+        RTree tree = treeFor(element, type);
+        if (pending != null) pending.computeIfAbsent(tree, t -> new ArrayList<>()).add(element);
+        else tree.insert(element);
+    }
+
+    /**
+     * Adds a segment of a road to the tree used to find the nearest road. The road itself is drawn from
+     * the polyline of its way, inserted separately with insert.
+     */
+    public void insertRoadSegment(MapRoadSegment segment) {
+        if (pending != null) pending.computeIfAbsent(roadSegments, t -> new ArrayList<>()).add(segment);
+        else roadSegments.insert(segment);
+    }
+
+    private RTree treeFor(MapElement element, String type) {
+        return switch (element.getType()) {
+            case "coastline" -> coastline;
+            case "building" -> buildings;
+            case "primary" -> primary;
+            case "secondary" -> secondary;
+            case "tertiary" -> tertiary;
+            default -> type.equals("highway") ? otherRoads : other;
+        };
+    }
+
+    /**
+     * Makes insert collect elements instead of adding them to the trees right away.
+     * Call finishBulkLoad once every element has been inserted to build the trees in one go.
+     */
+    public void startBulkLoad() {
+        pending = new IdentityHashMap<>();
+    }
+
+    public void finishBulkLoad() {
+        if (pending == null) return;
+        for (Map.Entry<RTree, List<MapElement>> entry : pending.entrySet()) {
+            entry.getKey().bulkLoad(entry.getValue());
+        }
+        pending = null;
+        generalize();
+    }
+
+    /**
+     * Rebuilds the generalized layers drawn at LOW detail from the coastline and primary road trees.
+     */
+    public void generalize() {
+        generalizedCoastline = new RTree(generalizedCoastline.getMinChildren(), generalizedCoastline.getMaxChildren(), RTree.splitStrategy.RSTAR);
+        generalizedPrimary = new RTree(generalizedPrimary.getMinChildren(), generalizedPrimary.getMaxChildren(), RTree.splitStrategy.RSTAR);
+        generalizedCoastline.bulkLoad(Generalizer.generalizePaths(coastline.getElements(), "coastline"));
+        generalizedPrimary.bulkLoad(Generalizer.generalizeRoads(primary.getElements(), "primary"));
+    }
+
+    // Ordered like the layer enum
+    RTree[] trees() {
+        return new RTree[]{ primary, secondary, tertiary, otherRoads, buildings, coastline, other, generalizedCoastline, generalizedPrimary, roadSegments };
+    }
+
+    void setTrees(RTree[] trees) {
+        primary = trees[0];
+        secondary = trees[1];
+        tertiary = trees[2];
+        otherRoads = trees[3];
+        buildings = trees[4];
+        coastline = trees[5];
+        other = trees[6];
+        generalizedCoastline = trees[7];
+        generalizedPrimary = trees[8];
+        roadSegments = trees[9];
+    }
+
+    public Graph getGraph() { return graph; }
+
+    synchronized void setGraph(Graph graph) {
+        this.graph = graph;
+        landmarks = null;
+        hierarchies = null;
+        customizable = null;
+        customized = new ConcurrentHashMap<>();
+    }
+
+    Landmarks getLandmarks() {
+        Landmarks selected = landmarks;
+        if (selected != null) return selected;
+        synchronized (this) {
+            if (landmarks == null) landmarks = Landmarks.select(graph, Landmarks.DEFAULT_COUNT);
+            return landmarks;
+        }
+    }
+
+    synchronized void setLandmarks(Landmarks landmarks) { this.landmarks = landmarks; }
+
+    ContractionHierarchy getContractionHierarchy(int metric) {
+        ContractionHierarchy[] built = hierarchies;
+        if (built != null && built[metric] != null) return built[metric];
+        synchronized (this) {
+            // The array is replaced rather than filled in, so a reader never sees an element before the write publishing it
+            ContractionHierarchy[] updated = hierarchies == null ? new ContractionHierarchy[Graph.METRICS] : hierarchies.clone();
+            if (updated[metric] == null) {
+                updated[metric] = ContractionHierarchy.build(graph, Graph.modeOf(metric));
+                hierarchies = updated;
             }
+            return updated[metric];
+        }
+    }
+
+    synchronized void setContractionHierarchies(ContractionHierarchy[] hierarchies) { this.hierarchies = hierarchies.clone(); }
+
+    CustomizableHierarchy getCustomizableHierarchy() {
+        CustomizableHierarchy built = customizable;
+        if (built != null) return built;
+        synchronized (this) {
+            if (customizable == null) customizable = CustomizableHierarchy.build(graph);
+            return customizable;
         }
     }
 
+    synchronized void setCustomizableHierarchy(CustomizableHierarchy customizable) {
+        this.customizable = customizable;
+        customized = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The hierarchy customized to the metric, customizing it the first time the metric is used. Customizing
+     * happens outside any lock: routes by other metrics go on meanwhile, and concurrent first uses of the same
+     * metric wait for the one customization.
+     */
+    ContractionHierarchy getCustomizedHierarchy(Metric metric) {
+        ConcurrentMap<Metric, CompletableFuture<ContractionHierarchy>> cache = customized;
+        CompletableFuture<ContractionHierarchy> future = cache.get(metric);
+        if (future == null) {
+            CompletableFuture<ContractionHierarchy> created = new CompletableFuture<>();
+            future = cache.putIfAbsent(metric, created);
+            if (future == null) {
+                try {
+                    created.complete(getCustomizableHierarchy().customize(graph, metric));
+                } catch (RuntimeException e) {
+                    // Let a later call try again instead of failing forever
+                    cache.remove(metric, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+                return created.join();
+            }
+        }
+        return future.join();
+    }
+
     public void setMapArea(float minLat, float minLon, float maxLat, float maxLon) {
         this.minLat = minLat;
         this.minLon = minLon;
@@ -139,6 +354,10 @@ public class TreeStorage implements Serializable {
         this.maxLon = maxLon;
     }
 
+    public void setQueryFilter(RTree.queryFilter filter) {
+        for (RTree tree : trees()) tree.setQueryFilter(filter);
+    }
+
     public void setDebug(boolean debug) {
         //primary.setDebug(debug);
         //secondary.setDebug(debug);
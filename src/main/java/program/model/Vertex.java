@@ -2,34 +2,26 @@ package program.model;
 
 import program.shared.Point;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.io.*;
 
-public class Vertex extends Point implements Comparable<Vertex>, Serializable {
-    transient List<DirectedEdge> outEdges;
-    transient List<DirectedEdge> inEdges;
-    transient float distTo;
+public class Vertex extends Point implements Serializable {
+    // Id of the vertex in the routing graph, -1 until the vertex is added to one
+    private transient int index = -1;
 
     public Vertex(float x, float y, long id) {
         super(x, y, id);
-        outEdges = new ArrayList<>();
-        inEdges = new ArrayList<>();
-        distTo = Float.POSITIVE_INFINITY;
     }
 
     public Vertex(float x, float y){
         super(x, y);
-        outEdges = new ArrayList<>();
-        inEdges = new ArrayList<>();
-        distTo = Float.POSITIVE_INFINITY;
     }
 
-    public void addOutEdge(DirectedEdge edge){
-        outEdges.add(edge);
+    public int getIndex() {
+        return index;
     }
-    public void addInEdge(DirectedEdge edge) {
-        inEdges.add(edge);
+
+    void setIndex(int index) {
+        this.index = index;
     }
 
     @Override
@@ -37,19 +29,10 @@ public class Vertex extends Point implements Comparable<Vertex>, Serializable {
         return getX() + " " + getY();
     }
 
-    @Override
-    public int compareTo(Vertex other){
-        return Float.compare(distTo, other.distTo);
-    }
-
-    public void setDistTo(float i) {
-        distTo = i;
-    }
-
     @Serial
     private void readObject(java.io.ObjectInputStream in)
             throws IOException, ClassNotFoundException {
-        this.inEdges = new ArrayList<>();
-        this.outEdges = new ArrayList<>();
+        in.defaultReadObject();
+        this.index = -1;
     }
 }
@@ -0,0 +1,23 @@
+package program.shared;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Map elements whose outline can be added to a shared path, so every element of a style can be painted
+ * with one stroke or fill.
+ */
+public interface ITraceable {
+    // How a traced outline is painted
+    enum paint {
+        STROKE,
+        FILL
+    }
+
+    /**
+     * Adds the outline of the element to the current path without painting it.
+     * @param pixelSize size of one screen pixel in map units
+     */
+    void trace(GraphicsContext context, float pixelSize);
+
+    paint getPaint();
+}
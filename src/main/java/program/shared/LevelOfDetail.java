@@ -0,0 +1,138 @@
+package program.shared;
+
+/**
+ * Multi-resolution geometry for paths and areas. At import every point is given its Douglas-Peucker
+ * significance: the largest tolerance at which the point would still be kept. Keeping the points whose
+ * significance is at least a tolerance gives exactly the Douglas-Peucker simplification for that tolerance,
+ * so the levels below are cut from one float per point, which is also what the map file stores.
+ */
+public class LevelOfDetail {
+    // Shapes with fewer points than this are always drawn in full
+    public static final int MIN_POINTS = 16;
+    // Tolerance of each simplified level in map units. Each level is picked once a pixel is at least twice its
+    // tolerance, so the simplification is never visible.
+    private static final float[] TOLERANCES = { 0.00001F, 0.00004F, 0.00016F, 0.00064F, 0.00256F };
+    // A level is only stored if it has at most this share of the points of the level below it
+    private static final float MIN_REDUCTION = 0.75F;
+
+    /**
+     * Computes the Douglas-Peucker significance of every point. The end points are always kept and so
+     * are given infinite significance, and for closed shapes the point farthest from the first one is
+     * kept as well, so a simplified area never collapses to a line.
+     * @param points x, y pairs
+     * @param closed whether the shape is an area that ends where it starts
+     */
+    public static float[] significance(float[] points, boolean closed) {
+        int n = points.length / 2;
+        float[] significance = new float[n];
+        if (n == 0) return significance;
+        significance[0] = Float.POSITIVE_INFINITY;
+        significance[n - 1] = Float.POSITIVE_INFINITY;
+
+        // Pending ranges as (first, last, significance of the split that made them)
+        int[] ranges = new int[2 * n + 2];
+        float[] limits = new float[n + 1];
+        int size = 0;
+        ranges[0] = 0;
+        ranges[1] = n - 1;
+        limits[0] = Float.POSITIVE_INFINITY;
+        size++;
+        boolean first = true;
+        while (size > 0) {
+            size--;
+            int from = ranges[2 * size], to = ranges[2 * size + 1];
+            float limit = limits[size];
+            if (to - from < 2) continue;
+
+            int farthest = -1;
+            float farthestDistance = -1;
+            for (int i = from + 1; i < to; i++) {
+                float distance = closed && first
+                        ? distance(points, i, from)
+                        : distanceToLine(points, i, from, to);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            // A point is never more significant than the split above it, which keeps the levels nested
+            float value = closed && first ? Float.POSITIVE_INFINITY : Math.min(farthestDistance, limit);
+            significance[farthest] = value;
+            first = false;
+
+            ranges[2 * size] = from;
+            ranges[2 * size + 1] = farthest;
+            limits[size++] = value;
+            ranges[2 * size] = farthest;
+            ranges[2 * size + 1] = to;
+            limits[size++] = value;
+        }
+        return significance;
+    }
+
+    /**
+     * Cuts the simplified levels out of the points. Level 0 is the points themselves, level i + 1 keeps the
+     * points whose significance is at least TOLERANCES[i]. A level that barely removes anything shares the
+     * array of the level below it.
+     */
+    public static float[][] levels(float[] points, float[] significance) {
+        float[][] levels = new float[TOLERANCES.length + 1][];
+        levels[0] = points;
+        for (int level = 1; level < levels.length; level++) {
+            float tolerance = TOLERANCES[level - 1];
+            int kept = count(significance, tolerance);
+            float[] previous = levels[level - 1];
+            levels[level] = kept > previous.length / 2 * MIN_REDUCTION ? previous : keep(points, significance, tolerance, kept);
+        }
+        return levels;
+    }
+
+    /**
+     * Douglas-Peucker simplification of the points with the given tolerance.
+     */
+    public static float[] simplify(float[] points, boolean closed, float tolerance) {
+        float[] significance = significance(points, closed);
+        return keep(points, significance, tolerance, count(significance, tolerance));
+    }
+
+    private static int count(float[] significance, float tolerance) {
+        int kept = 0;
+        for (float s : significance) if (s >= tolerance) kept++;
+        return kept;
+    }
+
+    // The kept points whose significance is at least the tolerance
+    private static float[] keep(float[] points, float[] significance, float tolerance, int kept) {
+        float[] simplified = new float[kept * 2];
+        int next = 0;
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] < tolerance) continue;
+            simplified[next++] = points[2 * i];
+            simplified[next++] = points[2 * i + 1];
+        }
+        return simplified;
+    }
+
+    /**
+     * The coarsest level whose tolerance is at most half of a pixel.
+     * @param pixelSize size of one screen pixel in map units, 1 / sqrt(trans.determinant())
+     */
+    public static int levelFor(float pixelSize) {
+        int level = 0;
+        while (level < TOLERANCES.length && TOLERANCES[level] * 2 <= pixelSize) level++;
+        return level;
+    }
+
+    private static float distance(float[] points, int i, int j) {
+        float dx = points[2 * i] - points[2 * j], dy = points[2 * i + 1] - points[2 * j + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float distanceToLine(float[] points, int i, int from, int to) {
+        float ax = points[2 * from], ay = points[2 * from + 1];
+        float dx = points[2 * to] - ax, dy = points[2 * to + 1] - ay;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) return distance(points, i, from);
+        return Math.abs(dx * (points[2 * i + 1] - ay) - dy * (points[2 * i] - ax)) / length;
+    }
+}
@@ -12,7 +12,7 @@ public abstract class MapElement implements IBoundingBox, Serializable {
     public MapElement(String type) {
         this.type = type;
         minPoint = new float[]{ Float.MAX_VALUE, Float.MAX_VALUE };
-        maxPoint = new float[]{ Float.MIN_VALUE, Float.MIN_VALUE };
+        maxPoint = new float[]{ -Float.MAX_VALUE, -Float.MAX_VALUE };
     }
     public float[] getMinPoint() {
         return minPoint;
@@ -24,4 +24,16 @@ public abstract class MapElement implements IBoundingBox, Serializable {
         return type;
     }
     public abstract void draw(GraphicsContext context);
+
+    /**
+     * Draws the element at the level of detail fitting the zoom. Elements without simplified geometry draw in full.
+     * @param pixelSize size of one screen pixel in map units
+     */
+    public void draw(GraphicsContext context, float pixelSize) {
+        draw(context);
+    }
+
+    // Style the element sets on top of the theme before it is painted
+    public void prepareStyle(GraphicsContext context) {
+    }
 }
@@ -5,9 +5,12 @@ import javafx.scene.canvas.GraphicsContext;
 import java.util.ArrayList;
 import java.util.List;
 
-public class MapPath extends MapElement {
+public class MapPath extends MapElement implements ITraceable {
     private float[] points;
     private int count;
+    private float[] significance;
+    // levels[0] is points, higher levels are simplified further, null for shapes that are too small to simplify
+    private float[][] levels;
 
     public MapPath(String type, int size) {
         super(type);
@@ -15,33 +18,75 @@ public class MapPath extends MapElement {
         count = 0;
     }
 
+    public float[] getPoints() {
+        return points;
+    }
+
     public void add(Point point) {
-        if (point.getX() < minPoint[0]){
-            minPoint[0] = point.getX();
-        } else if (point.getX() > maxPoint[0]) {
-            maxPoint[0] = point.getX();
-        }
-        if (point.getY() < minPoint[1]) {
-            minPoint[1] = point.getY();
-        } else if (point.getY() > maxPoint[1]) {
-            maxPoint[1] = point.getY();
-        }
-        points[count] = point.getX();
+        add(point.getX(), point.getY());
+    }
+
+    public void add(float x, float y) {
+        // Not else-if: the first point has to set both the minimum and the maximum
+        if (x < minPoint[0]) minPoint[0] = x;
+        if (x > maxPoint[0]) maxPoint[0] = x;
+        if (y < minPoint[1]) minPoint[1] = y;
+        if (y > maxPoint[1]) maxPoint[1] = y;
+        points[count] = x;
         count++;
-        points[count] = point.getY();
+        points[count] = y;
         count++;
     }
 
+
+    /**
+     * Computes the simplified levels of the shape. Call once every point has been added.
+     */
+    public void simplify() {
+        if (points.length / 2 < LevelOfDetail.MIN_POINTS) return;
+        setSignificance(LevelOfDetail.significance(points, false));
+    }
+
+    // Significance of every point, or null if the shape is always drawn in full
+    public float[] getSignificance() {
+        return significance;
+    }
+
+    public void setSignificance(float[] significance) {
+        this.significance = significance;
+        levels = LevelOfDetail.levels(points, significance);
+    }
+
+    private float[] pointsFor(float pixelSize) {
+        return levels == null ? points : levels[LevelOfDetail.levelFor(pixelSize)];
+    }
+
     @Override
     public void draw(GraphicsContext context) {
+        draw(context, 0);
+    }
+
+    @Override
+    public void draw(GraphicsContext context, float pixelSize) {
         /*context.strokeRect(minPoint.getX(), -maxPoint.getY(),
                 maxPoint.getX() - minPoint.getX(),
                 maxPoint.getY() - minPoint.getY());*/
-        context.moveTo(points[0], -points[1]);
         context.beginPath();
+        trace(context, pixelSize);
+        context.stroke();
+    }
+
+    @Override
+    public void trace(GraphicsContext context, float pixelSize) {
+        float[] points = pointsFor(pixelSize);
+        context.moveTo(points[0], -points[1]);
         for (int i = 2; i < points.length; i += 2){
             context.lineTo(points[i], -points[i+1]);
         }
-        context.stroke();
+    }
+
+    @Override
+    public paint getPaint() {
+        return paint.STROKE;
     }
 }
@@ -6,7 +6,7 @@ import program.model.Vertex;
 
 import java.io.*;
 
-public class MapRoadSegment extends MapElement implements Serializable {
+public class MapRoadSegment extends MapElement implements ITraceable, Serializable {
     private final Vertex a;
     private final Vertex b;
     private final String name;
@@ -42,9 +42,19 @@ public class MapRoadSegment extends MapElement implements Serializable {
     public void draw(GraphicsContext context) {
         // Because of screen coordinates, latitude is negated and therefore drawn in negative
         context.beginPath();
+        trace(context, 0);
+        context.stroke();
+    }
+
+    @Override
+    public void trace(GraphicsContext context, float pixelSize) {
         context.moveTo(a.getX(), -a.getY());
         context.lineTo(b.getX(), -b.getY());
-        context.stroke();
+    }
+
+    @Override
+    public paint getPaint() {
+        return paint.STROKE;
     }
 
     public String getName() {
@@ -15,26 +15,27 @@ import static program.model.Model.MOT.*;
 class BiDirectionalDijkstraTest {
 
     List<Vertex> vertices;
-    List<MapRoadSegment> mapRoadSegments;
+    Graph.Builder builder;
+    Graph graph;
 
 
     @Test
     void arbitraryVerticesTest(){
-        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(vertices.get(1), vertices.get(8), CAR);
+        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(1).getIndex(), vertices.get(8).getIndex(), CAR);
         //Iterable<DirectedEdge> edges = bididi.getEdgePath();
         assertEquals(bididi.currentShortestPathLength, 115);
     }
 
     @Test
     void neighbourVertexTest(){
-        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(vertices.get(3), vertices.get(5), CAR);
+        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(3).getIndex(), vertices.get(5).getIndex(), CAR);
         //Iterable<DirectedEdge> edges = bididi.getEdgePath();
         assertEquals(bididi.currentShortestPathLength, 2);
     }
 
     @Test
     void splitPathTest(){
-        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(vertices.get(6), vertices.get(9), CAR);
+        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(6).getIndex(), vertices.get(9).getIndex(), CAR);
         //Iterable<DirectedEdge> edges = bididi.getEdgePath();
         assertEquals(bididi.currentShortestPathLength, 5);
     }
@@ -42,7 +43,7 @@ class BiDirectionalDijkstraTest {
     @Test
     void sameSourceAndDestinationTest(){
         try {
-            BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(vertices.get(6), vertices.get(6), CAR);
+            BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(6).getIndex(), vertices.get(6).getIndex(), CAR);
             fail();
         } catch (IllegalArgumentException e) {
             assertTrue(true);
@@ -50,7 +51,7 @@ class BiDirectionalDijkstraTest {
     }
     @Test
     void directionsTest(){
-        BiDirectionalDijkstra bdd = new BiDirectionalDijkstra(vertices.get(1), vertices.get(5), CAR);
+        BiDirectionalDijkstra bdd = new BiDirectionalDijkstra(graph, vertices.get(1).getIndex(), vertices.get(5).getIndex(), CAR);
 
 
         for (MapRoadSegment m : bdd.getPath()){
@@ -60,10 +61,42 @@ class BiDirectionalDijkstraTest {
         System.out.println(bdd.getInstructions());
     }
 
+    @Test
+    void pathTest(){
+        BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(1).getIndex(), vertices.get(3).getIndex(), CAR);
+        // B-A-C-F-D is shorter than B-F-D
+        assertEquals(List.of("a", "b", "c", "e"), bididi.getPath().stream().map(MapRoadSegment::getName).toList());
+    }
+
+    @Test
+    void csrLayoutTest(){
+        assertEquals(12, graph.vertexCount());
+        assertEquals(30, graph.edgeCount());
+        int f = vertices.get(5).getIndex();
+        // F is on the roads c, e, f, g and h, and every road goes both ways
+        assertEquals(5, graph.firstOut[f + 1] - graph.firstOut[f]);
+        assertEquals(5, graph.firstIn[f + 1] - graph.firstIn[f]);
+        for (int e = graph.firstOut[f]; e < graph.firstOut[f + 1]; e++) assertEquals(f, graph.tail(e));
+        for (int i = graph.firstIn[f]; i < graph.firstIn[f + 1]; i++) assertEquals(f, graph.head(graph.inEdge[i]));
+    }
+
+    @Test
+    void reusedSearchSpaceTest(){
+        SearchSpace forward = new SearchSpace(graph.vertexCount()), backward = new SearchSpace(graph.vertexCount());
+        int[][] routes = { { 1, 8 }, { 3, 5 }, { 6, 9 }, { 1, 8 } };
+        float[] lengths = { 115, 2, 5, 115 };
+        // Whatever the previous searches left in the arrays must not change the result
+        for (int i = 0; i < routes.length; i++) {
+            BiDirectionalDijkstra bididi = new BiDirectionalDijkstra(graph, vertices.get(routes[i][0]).getIndex(),
+                    vertices.get(routes[i][1]).getIndex(), CAR, forward, backward);
+            assertEquals(lengths[i], bididi.currentShortestPathLength);
+        }
+    }
+
     @BeforeEach
     void setUp() {
         vertices = new ArrayList<>();
-        mapRoadSegments = new ArrayList<>();
+        builder = new Graph.Builder();
 
         vertices.add(new Vertex(3, 4)); // A 0
         vertices.add(new Vertex(4, 5)); // B 1
@@ -93,19 +126,15 @@ class BiDirectionalDijkstraTest {
         addEdge(9, 10,2, "n");
         addEdge(9, 11,10, "m");
         addEdge(10, 11,2, "o");
+        graph = builder.build();
 
     }
 
     private void addEdge(int x, int y, int w, String name){
         MapRoadSegment road = new MapRoadSegment(vertices.get(x), vertices.get(y), name, "type", 80, true, false);
 
-        DirectedEdge edge = new DirectedEdge(vertices.get(x), vertices.get(y), 1, road);
-        vertices.get(x).addOutEdge(edge);
-        vertices.get(y).addInEdge(edge);
-
-        edge = new DirectedEdge(vertices.get(y), vertices.get(x), 1, road);
-        vertices.get(y).addOutEdge(edge);
-        vertices.get(x).addInEdge(edge);
+        builder.addEdge(vertices.get(x), vertices.get(y), w, road);
+        builder.addEdge(vertices.get(y), vertices.get(x), w, road);
     }
 
     @AfterEach
@@ -0,0 +1,96 @@
+package program.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import program.shared.MapRoadSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomizableHierarchyTest {
+    Graph graph;
+
+    @BeforeEach
+    void setUp() {
+        // Random roads between random points, so the map is cut in both directions
+        Random random = new Random(5);
+        Vertex[] vertices = new Vertex[300];
+        for (int i = 0; i < vertices.length; i++) vertices[i] = new Vertex(random.nextFloat() * 10, random.nextFloat() * 5);
+        Graph.Builder builder = new Graph.Builder();
+        for (int i = 0; i < 900; i++) {
+            Vertex a = vertices[random.nextInt(vertices.length)], b = vertices[random.nextInt(vertices.length)];
+            if (a == b) continue;
+            MapRoadSegment road = new MapRoadSegment(a, b, "vej", "residential", 50, true, false);
+            builder.addEdge(a, b, road.getDistance() / 50, road);
+            builder.addEdge(b, a, random.nextInt(4) == 0 ? Float.POSITIVE_INFINITY : road.getDistance() / 50, road);
+        }
+        graph = builder.build();
+    }
+
+    @Test
+    void topologyTest() {
+        CustomizableHierarchy hierarchy = CustomizableHierarchy.build(graph);
+        int[] sorted = hierarchy.rank.clone();
+        Arrays.sort(sorted);
+        for (int r = 0; r < sorted.length; r++) assertEquals(r, sorted[r]);
+
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            for (int arc = hierarchy.firstArc[v]; arc < hierarchy.firstArc[v + 1]; arc++) {
+                assertTrue(hierarchy.rank[hierarchy.arcHead[arc]] > hierarchy.rank[v]);
+                if (arc > hierarchy.firstArc[v]) assertTrue(hierarchy.rank[hierarchy.arcHead[arc]] > hierarchy.rank[hierarchy.arcHead[arc - 1]]);
+            }
+        }
+    }
+
+    @Test
+    void customizeTest() {
+        CustomizableHierarchy customizable = CustomizableHierarchy.build(graph);
+        ContractionHierarchy hierarchy = customizable.customize(graph, Metric.profile.CAR);
+        SearchSpace forward = new SearchSpace(graph.vertexCount()), backward = new SearchSpace(graph.vertexCount());
+        for (int source = 0; source < 20; source++) {
+            float[] expected = Landmarks.distances(graph, source, Graph.metric(Model.MOT.CAR), false);
+            for (int destination = 0; destination < graph.vertexCount(); destination++) {
+                if (destination == source) continue;
+                if (expected[destination] == Float.POSITIVE_INFINITY) {
+                    int from = source, to = destination;
+                    assertThrows(IllegalArgumentException.class, () -> new ContractionHierarchyDijkstra(graph, hierarchy, from, to, forward, backward));
+                    continue;
+                }
+                ContractionHierarchyDijkstra search = new ContractionHierarchyDijkstra(graph, hierarchy, source, destination, forward, backward);
+                assertEquals(expected[destination], search.currentShortestPathLength, expected[destination] * 1e-5);
+                // Every road has the same speed, so the unpacked segments must add up to the driving time
+                float time = 0;
+                for (MapRoadSegment segment : search.getPath()) time += segment.getDistance() / 50;
+                assertEquals(expected[destination], time, expected[destination] * 1e-5);
+            }
+        }
+    }
+
+    @Test
+    void concurrentCustomizeTest() throws Exception {
+        TreeStorage storage = new TreeStorage();
+        storage.setGraph(graph);
+        // Concurrent first uses of a metric must share one customization
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ContractionHierarchy>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Metric metric = i % 2 == 0 ? Metric.profile.CAR : Metric.profile.WALK;
+                results.add(executor.submit(() -> storage.getCustomizedHierarchy(metric)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertSame(results.get(i % 2).get(), results.get(i).get());
+            }
+            assertNotSame(results.get(0).get(), results.get(1).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
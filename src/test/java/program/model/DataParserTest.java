@@ -0,0 +1,67 @@
+package program.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataParserTest {
+    File file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("extract", ".osm").toFile();
+        // Two roads, of which the second may not be used. Node 5 is only on the closed road.
+        String osm = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <osm version="0.6">
+                  <bounds minlat="55.0" minlon="12.0" maxlat="55.1" maxlon="12.1"/>
+                  <node id="1" lat="55.01" lon="12.01"/>
+                  <node id="2" lat="55.02" lon="12.02"/>
+                  <node id="3" lat="55.03" lon="12.03"/>
+                  <node id="4" lat="55.04" lon="12.04"/>
+                  <node id="5" lat="55.05" lon="12.05"/>
+                  <way id="10">
+                    <nd ref="1"/>
+                    <nd ref="2"/>
+                    <nd ref="3"/>
+                    <tag k="highway" v="residential"/>
+                    <tag k="name" v="Testvej"/>
+                  </way>
+                  <way id="11">
+                    <nd ref="3"/>
+                    <nd ref="4"/>
+                    <nd ref="5"/>
+                    <tag k="highway" v="service"/>
+                    <tag k="access" v="no"/>
+                  </way>
+                </osm>
+                """;
+        Files.writeString(file.toPath(), osm, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void accessNoFilteredTest() throws Exception {
+        TreeStorage storage = DataParser.parse(file.getPath(), AddressBook.getInstance(), true);
+        assertEquals(3, storage.getGraph().vertexCount());
+        assertEquals(4, storage.getGraph().edgeCount());
+    }
+
+    @Test
+    void accessNoUnfilteredTest() throws Exception {
+        TreeStorage storage = DataParser.parse(file.getPath(), AddressBook.getInstance(), false);
+        assertEquals(3, storage.getGraph().vertexCount());
+        assertEquals(4, storage.getGraph().edgeCount());
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+}
@@ -0,0 +1,61 @@
+package program.model;
+
+import program.shared.MapPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares a distance matrix between random vertices with planning a route on the contraction hierarchy for
+ * every pair, by time. Both must give the same distances.
+ * Run with: gradle benchmark -Pbench=program.model.DistanceMatrixBenchmark -Pargs="denmark-latest.zip.map 200 CAR"
+ * The extract can be an .osm, .zip or .map file.
+ */
+public class DistanceMatrixBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: DistanceMatrixBenchmark <extract> [points] [CAR|BIKE|WALK]");
+            return;
+        }
+        TreeStorage storage = args[0].endsWith(MapFile.EXTENSION)
+                ? MapFile.read(args[0], AddressBook.getInstance())
+                : DataParser.parse(args[0], AddressBook.getInstance(), true);
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Model.MOT modeOfTransport = args.length > 2 ? Model.MOT.valueOf(args[2]) : Model.MOT.CAR;
+        Graph graph = storage.getGraph();
+        RoutePlanner planner = new RoutePlanner(storage);
+
+        Random random = new Random(count);
+        List<MapPoint> sources = new ArrayList<>(), targets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Vertex s = graph.vertex(random.nextInt(graph.vertexCount())), t = graph.vertex(random.nextInt(graph.vertexCount()));
+            sources.add(new MapPoint(s.getX(), s.getY(), ""));
+            targets.add(new MapPoint(t.getX(), t.getY(), ""));
+        }
+        System.out.printf("Vertices: %d, %d x %d, %s%n", graph.vertexCount(), count, count, modeOfTransport);
+
+        // Once to warm up
+        planner.distanceMatrix(sources, targets, modeOfTransport);
+        long start = System.nanoTime();
+        float[][] matrix = planner.distanceMatrix(sources, targets, modeOfTransport);
+        System.out.printf("%-10s %12.2f ms%n", "matrix", (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                float length;
+                try {
+                    length = planner.planRoute(sources.get(i), targets.get(j), modeOfTransport, RoutePlanner.algorithm.CH).getLength();
+                } catch (IllegalArgumentException e) {
+                    // Same vertex or not connected
+                    continue;
+                }
+                if (Math.abs(length - matrix[i][j]) > length * 1e-5) {
+                    throw new IllegalStateException("Matrix has " + matrix[i][j] + " from " + i + " to " + j + " instead of " + length);
+                }
+            }
+        }
+        System.out.printf("%-10s %12.2f ms%n", "pairwise", (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,56 @@
+package program.model;
+
+import org.junit.jupiter.api.Test;
+import program.shared.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneralizerTest {
+    @Test
+    void chainTest() {
+        // a-b-c-d with the middle piece reversed, and a branch at c
+        List<float[]> pieces = List.of(
+                new float[]{ 0, 0, 1, 0 },
+                new float[]{ 2, 0, 1, 0 },
+                new float[]{ 2, 0, 3, 0 },
+                new float[]{ 2, 0, 2, 1 });
+        List<float[]> lines = Generalizer.chain(new ArrayList<>(pieces));
+
+        // The branch point c ends every line, a-b-c are joined
+        assertEquals(3, lines.size());
+        assertArrayEquals(new float[]{ 0, 0, 1, 0, 2, 0 }, lines.get(0));
+    }
+
+    @Test
+    void ringTest() {
+        List<float[]> pieces = List.of(
+                new float[]{ 0, 0, 1, 0, 1, 1 },
+                new float[]{ 1, 1, 0, 1, 0, 0 });
+        List<float[]> lines = Generalizer.chain(new ArrayList<>(pieces));
+
+        assertEquals(1, lines.size());
+        assertEquals(10, lines.get(0).length);
+    }
+
+    @Test
+    void lowDetailUsesGeneralizedLayersTest() {
+        TreeStorage storage = new TreeStorage();
+        storage.startBulkLoad();
+        Vertex previous = new Vertex(0, 0);
+        for (int i = 1; i <= 100; i++) {
+            Vertex next = new Vertex(i * 0.001F, (i % 2) * 0.00001F);
+            storage.insert(new MapRoadSegment(previous, next, "Motorvej", "primary", 110, true, true), "highway");
+            previous = next;
+        }
+        storage.finishBulkLoad();
+
+        List<MapElement> low = storage.query(new float[]{ -1, -1 }, new float[]{ 1, 1 }, TreeStorage.detail.LOW);
+        // The 100 segments become one path, and the zigzag is far below the tolerance
+        assertEquals(1, low.size());
+        assertEquals(4, ((MapPath) low.get(0)).getPoints().length);
+        assertEquals(100, storage.query(new float[]{ -1, -1 }, new float[]{ 1, 1 }, TreeStorage.detail.MEDIUM).size());
+    }
+}
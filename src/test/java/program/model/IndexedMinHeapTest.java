@@ -0,0 +1,80 @@
+package program.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedMinHeapTest {
+    @Test
+    void decreaseKeyTest() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.insertOrDecrease(0, 5);
+        heap.insertOrDecrease(1, 3);
+        heap.insertOrDecrease(2, 4);
+        heap.insertOrDecrease(0, 1);
+        // A larger key never raises a queued vertex
+        heap.insertOrDecrease(1, 10);
+
+        assertEquals(3, heap.size());
+        assertEquals(0, heap.poll());
+        assertEquals(3F, heap.peekKey());
+        assertEquals(1, heap.poll());
+        assertEquals(2, heap.poll());
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(0));
+    }
+
+    @Test
+    void randomOrderTest() {
+        int n = 1000;
+        Random random = new Random(3);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        float[] keys = new float[n];
+        for (int v = 0; v < n; v++) {
+            keys[v] = random.nextFloat() * 100;
+            heap.insertOrDecrease(v, keys[v]);
+        }
+        for (int i = 0; i < 3000; i++) {
+            int v = random.nextInt(n);
+            keys[v] = Math.min(keys[v], random.nextFloat() * 100);
+            heap.insertOrDecrease(v, keys[v]);
+        }
+
+        float previous = -1;
+        while (!heap.isEmpty()) {
+            float key = heap.peekKey();
+            int v = heap.poll();
+            assertEquals(keys[v], key);
+            assertTrue(key >= previous);
+            previous = key;
+        }
+    }
+
+    @Test
+    void updateTest() {
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.insertOrDecrease(0, 1);
+        heap.insertOrDecrease(1, 2);
+        heap.update(2, 3);
+        // Raising the key moves the vertex down past the others
+        heap.update(0, 5);
+        heap.update(2, 0);
+
+        assertEquals(2, heap.poll());
+        assertEquals(1, heap.poll());
+        assertEquals(5F, heap.peekKey());
+        assertEquals(0, heap.poll());
+    }
+
+    @Test
+    void clearTest() {
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.insertOrDecrease(2, 1);
+        heap.clear();
+        assertFalse(heap.contains(2));
+        heap.insertOrDecrease(2, 7);
+        assertEquals(7F, heap.peekKey());
+    }
+}
@@ -0,0 +1,148 @@
+package program.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import program.shared.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapFileTest {
+    File file;
+    TreeStorage storage;
+    Graph.Builder graph;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("map", MapFile.EXTENSION).toFile();
+        storage = new TreeStorage();
+        storage.setMapArea(55, 12, 56, 13);
+        graph = new Graph.Builder();
+
+        Vertex a = new Vertex(1, 1), b = new Vertex(2, 2), c = new Vertex(3, 1);
+        addRoad(a, b, "Testvej", "primary");
+        addRoad(b, c, "Prøvevej", "residential");
+        storage.setGraph(graph.build());
+
+        MapPath coast = new MapPath("coastline", 3);
+        coast.add(0, 0);
+        coast.add(5, 1);
+        coast.add(6, 4);
+        storage.insert(coast, "natural");
+
+        MapFillable building = new MapFillable("building", 3);
+        building.add(2, 2);
+        building.add(3, 2);
+        building.add(3, 3);
+        storage.insert(building, "building");
+
+        AddressBook.getInstance().addAddress(new Address("Testvej", "7", "2300", "Testby"), new Point(1.5F, 1.5F));
+    }
+
+    private void addRoad(Vertex from, Vertex to, String name, String type) {
+        MapRoadSegment road = new MapRoadSegment(from, to, name, type, 50, true, false);
+        graph.addEdge(from, to, road.getDistance() / 50, road);
+        graph.addEdge(to, from, Float.POSITIVE_INFINITY, road);
+        storage.insert(road, "highway");
+    }
+
+    @Test
+    void roundTripTest() throws IOException {
+        MapFile.write(file.getPath(), storage, AddressBook.getInstance());
+
+        TreeStorage read = MapFile.read(file.getPath(), AddressBook.getInstance());
+        Graph readGraph = read.getGraph();
+
+        assertEquals(55F, read.getMinLat());
+        assertEquals(13F, read.getMaxLon());
+        assertEquals(storage.elementCount, read.elementCount);
+
+        float[] min = { -10, -10 }, max = { 10, 10 };
+        assertEquals(storage.query(min, max, TreeStorage.detail.HIGH).size(), read.query(min, max, TreeStorage.detail.HIGH).size());
+        for (int i = 0; i < storage.trees().length; i++) {
+            RTree tree = storage.trees()[i], readTree = read.trees()[i];
+            assertEquals(tree.getMinChildren(), readTree.getMinChildren());
+            assertEquals(tree.getMaxChildren(), readTree.getMaxChildren());
+            assertEquals(tree.getSplitStrategy(), readTree.getSplitStrategy());
+        }
+
+        assertEquals(4, readGraph.edgeCount());
+        assertArrayEquals(storage.getGraph().firstOut, readGraph.firstOut);
+        assertArrayEquals(storage.getGraph().head, readGraph.head);
+        // b -> a goes against the one-way road
+        assertEquals(Float.POSITIVE_INFINITY, readGraph.weight(readGraph.firstOut[1], Model.MOT.CAR));
+        assertEquals("Prøvevej", readGraph.segment(readGraph.firstOut[1] + 1).getName());
+        // Shared vertices must be restored as a single object
+        assertSame(readGraph.vertex(1), readGraph.segment(readGraph.firstOut[1] + 1).getVertexA());
+        assertEquals(2, readGraph.firstOut[2] - readGraph.firstOut[1]);
+
+        Landmarks landmarks = storage.getLandmarks(), readLandmarks = read.getLandmarks();
+        assertArrayEquals(landmarks.vertices, readLandmarks.vertices);
+        for (int metric = 0; metric < Graph.METRICS; metric++) {
+            assertEquals(landmarks.from[metric], readLandmarks.from[metric]);
+            assertEquals(landmarks.to[metric], readLandmarks.to[metric]);
+        }
+
+        for (int metric = 0; metric < Graph.METRICS; metric++) {
+            ContractionHierarchy hierarchy = storage.getContractionHierarchy(metric), readHierarchy = read.getContractionHierarchy(metric);
+            assertArrayEquals(hierarchy.rank, readHierarchy.rank);
+            assertArrayEquals(hierarchy.upWeight, readHierarchy.upWeight);
+            assertArrayEquals(hierarchy.downEdge, readHierarchy.downEdge);
+            assertArrayEquals(hierarchy.shortcutSecond, readHierarchy.shortcutSecond);
+        }
+
+        CustomizableHierarchy customizable = storage.getCustomizableHierarchy(), readCustomizable = read.getCustomizableHierarchy();
+        assertArrayEquals(customizable.rank, readCustomizable.rank);
+        assertArrayEquals(customizable.arcHead, readCustomizable.arcHead);
+
+        MapPoint address = AddressBook.getInstance().addressSearch(new Address("Testvej", "7", "2300", "Testby"));
+        assertEquals(1.5F, address.getMinPoint()[0]);
+    }
+
+    @Test
+    void versionMismatchTest() throws IOException {
+        MapFile.write(file.getPath(), storage, AddressBook.getInstance());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[4] = (byte) (MapFile.VERSION + 1);
+        Files.write(file.toPath(), bytes);
+
+        assertThrows(IOException.class, () -> MapFile.read(file.getPath(), AddressBook.getInstance()));
+    }
+
+    @Test
+    void truncatedFileTest() throws IOException {
+        MapFile.write(file.getPath(), storage, AddressBook.getInstance());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 16));
+
+        assertThrows(IOException.class, () -> MapFile.read(file.getPath(), AddressBook.getInstance()));
+    }
+
+    @Test
+    void failedWriteTest() throws IOException {
+        MapFile.write(file.getPath(), storage, AddressBook.getInstance());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // A segment that fails once the file has been partly written must leave the earlier file as it was
+        MapRoadSegment broken = new MapRoadSegment(new Vertex(4, 4), new Vertex(5, 5), "Brudtvej", "primary", 50, true, false) {
+            @Override
+            public int getMaxSpeed() {
+                throw new IllegalStateException("Broken segment");
+            }
+        };
+        storage.insert(broken, "highway");
+        assertThrows(IllegalStateException.class, () -> MapFile.write(file.getPath(), storage, AddressBook.getInstance()));
+        assertTrue(Arrays.equals(bytes, Files.readAllBytes(file.toPath())));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @AfterEach
+    void tearDown() {
+        file.delete();
+    }
+}
@@ -0,0 +1,52 @@
+package program.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeIdSetTest {
+    @Test
+    void sealTest() {
+        NodeIdSet set = new NodeIdSet();
+        set.add(42);
+        set.add(7);
+        set.add(42);
+        set.add(-3);
+        set.seal();
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(7));
+        assertTrue(set.contains(-3));
+        assertFalse(set.contains(8));
+        assertThrows(IllegalStateException.class, () -> set.add(1));
+    }
+
+    @Test
+    void unsealedTest() {
+        NodeIdSet set = new NodeIdSet();
+        set.add(1);
+        assertThrows(IllegalStateException.class, () -> set.contains(1));
+    }
+
+    @Test
+    void manyDuplicatesTest() {
+        // Far more refs than distinct ids, as when ways share their nodes
+        Random random = new Random(9);
+        NodeIdSet set = new NodeIdSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = random.nextInt(5000) * 1_000_003L;
+            set.add(id);
+            expected.add(id);
+        }
+        set.seal();
+
+        assertEquals(expected.size(), set.size());
+        for (long id : expected) assertTrue(set.contains(id));
+        assertFalse(set.contains(1));
+    }
+}
@@ -0,0 +1,81 @@
+package program.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeTableTest {
+    // Every node lies at (id, -id), so the coordinates show whether they moved along with their id
+    private static void add(NodeTable table, long id) {
+        table.add(id, id, -id);
+    }
+
+    private static void assertNode(NodeTable table, long id) {
+        int index = table.indexOf(id);
+        assertTrue(index >= 0);
+        assertEquals(id, table.getId(index));
+        assertEquals((float) id, table.getX(index));
+        assertEquals((float) -id, table.getY(index));
+    }
+
+    @Test
+    void unsortedTest() {
+        // Enough nodes for the quicksort to partition before it falls back to insertion sort
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 5000; id++) ids.add(id * 3 + 1);
+        Collections.shuffle(ids, new Random(4));
+        NodeTable table = new NodeTable(16);
+        for (long id : ids) add(table, id);
+        table.seal();
+
+        assertEquals(5000, table.size());
+        for (int i = 1; i < table.size(); i++) assertTrue(table.getId(i - 1) < table.getId(i));
+        for (long id : ids) assertNode(table, id);
+        assertEquals(-1, table.indexOf(0));
+        assertEquals(-1, table.indexOf(2));
+        assertEquals(-1, table.indexOf(5000 * 3 + 1));
+    }
+
+    @Test
+    void sortedTest() {
+        NodeTable table = new NodeTable(4);
+        for (long id = 10; id < 100; id += 10) add(table, id);
+        table.seal();
+
+        // Already sorted input is left in the order it was added
+        for (int i = 0; i < table.size(); i++) assertEquals(10L * (i + 1), table.getId(i));
+        for (long id = 10; id < 100; id += 10) assertNode(table, id);
+        assertEquals(-1, table.indexOf(15));
+        assertEquals(-1, table.indexOf(100));
+    }
+
+    @Test
+    void duplicatesTest() {
+        Random random = new Random(6);
+        NodeTable table = new NodeTable(16);
+        for (int i = 0; i < 1000; i++) add(table, random.nextInt(50));
+        add(table, 1_000_000);
+        add(table, -1_000_000);
+        table.seal();
+
+        assertEquals(1002, table.size());
+        for (int i = 1; i < table.size(); i++) assertTrue(table.getId(i - 1) <= table.getId(i));
+        for (int i = 0; i < table.size(); i++) assertNode(table, table.getId(i));
+        assertNode(table, 1_000_000);
+        assertNode(table, -1_000_000);
+        assertEquals(-1, table.indexOf(50));
+    }
+
+    @Test
+    void emptyTest() {
+        NodeTable table = new NodeTable(0);
+        table.seal();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.indexOf(1));
+    }
+}
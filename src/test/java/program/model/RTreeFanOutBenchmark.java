@@ -0,0 +1,102 @@
+package program.model;
+
+import program.shared.MapElement;
+import program.shared.MapPoint;
+
+import java.util.*;
+
+/**
+ * Measures build time, memory and query latency of the R-tree layers for a range of fan-outs.
+ * Run with: gradle benchmark -Pbench=program.model.RTreeFanOutBenchmark -Pargs="denmark-latest.zip 4,8,16,32,64"
+ * The extract can be an .osm, .zip or .map file. The results are used to pick the values given to TreeStorage.
+ */
+public class RTreeFanOutBenchmark {
+    private static final int QUERIES = 2000;
+    private static final int NEAREST_QUERIES = 500;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: RTreeFanOutBenchmark <extract> [fan-outs, e.g. 4,8,16,32,64]");
+            return;
+        }
+        int[] fanOuts = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{ 4, 8, 16, 32, 64 };
+
+        TreeStorage storage = args[0].endsWith(MapFile.EXTENSION)
+                ? MapFile.read(args[0], AddressBook.getInstance())
+                : DataParser.parse(args[0], AddressBook.getInstance(), true);
+
+        float[] mapMin = { 0.56F * storage.getMinLon(), storage.getMinLat() };
+        float[] mapMax = { 0.56F * storage.getMaxLon(), storage.getMaxLat() };
+
+        System.out.printf("%-12s %7s %10s %10s %8s %6s %10s %12s %12s%n",
+                "layer", "fan-out", "elements", "build ms", "nodes", "depth", "heap MB", "query us", "nearest us");
+        for (TreeStorage.layer layer : TreeStorage.layer.values()) {
+            List<MapElement> elements = storage.getTree(layer).getElements();
+            if (elements.isEmpty()) continue;
+            for (int fanOut : fanOuts) {
+                benchmark(layer, fanOut, elements, mapMin, mapMax);
+            }
+        }
+    }
+
+    private static void benchmark(TreeStorage.layer layer, int fanOut, List<MapElement> elements, float[] mapMin, float[] mapMax) {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        RTree tree = new TreeStorage(Map.of(layer, fanOut)).getTree(layer);
+        tree.bulkLoad(elements);
+        long buildTime = System.nanoTime() - start;
+        long heap = Math.max(0, usedHeap() - heapBefore);
+
+        // Viewports are sized like the zoom level the layer is drawn at
+        float viewport = switch (layer) {
+            case COASTLINE -> 0.25F;
+            case PRIMARY, SECONDARY, TERTIARY -> 0.05F;
+            default -> 0.005F;
+        };
+        Random random = new Random(fanOut);
+        float width = (mapMax[0] - mapMin[0]) * viewport, height = (mapMax[1] - mapMin[1]) * viewport;
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            float x = mapMin[0] + random.nextFloat() * (mapMax[0] - mapMin[0] - width);
+            float y = mapMin[1] + random.nextFloat() * (mapMax[1] - mapMin[1] - height);
+            found += tree.query(new float[]{ x, y }, new float[]{ x + width, y + height }).size();
+        }
+        double queryTime = (System.nanoTime() - start) / 1000.0 / QUERIES;
+
+        double nearestTime = Double.NaN;
+        // The road layers hold whole roads, nearest neighbour looks for segments
+        if (layer == TreeStorage.layer.ROAD_SEGMENTS) {
+            start = System.nanoTime();
+            for (int i = 0; i < NEAREST_QUERIES; i++) {
+                float x = mapMin[0] + random.nextFloat() * (mapMax[0] - mapMin[0]);
+                float y = mapMin[1] + random.nextFloat() * (mapMax[1] - mapMin[1]);
+                tree.findNearestNeighbor(new MapPoint(x, y, ""));
+            }
+            nearestTime = (System.nanoTime() - start) / 1000.0 / NEAREST_QUERIES;
+        }
+
+        System.out.printf("%-12s %7d %10d %10.1f %8d %6d %10.1f %12.1f %12.1f%n",
+                layer, fanOut, elements.size(), buildTime / 1e6, countNodes(tree.getRoot()), depth(tree.getRoot()),
+                heap / 1e6, queryTime, nearestTime);
+        if (found < 0) System.out.println(); // keeps the query results alive
+    }
+
+    private static int countNodes(RTreeNode node) {
+        int count = 1;
+        for (RTreeNode child : node.children) count += countNodes(child);
+        return count;
+    }
+
+    private static int depth(RTreeNode node) {
+        return node.isLeaf() ? 1 : 1 + depth(node.children.get(0));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,179 @@
+package program.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import program.shared.MapElement;
+import program.shared.MapPath;
+import program.shared.MapPoint;
+import program.shared.MapRoadSegment;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RTreeTest {
+    List<MapRoadSegment> segments;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        segments = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float x = 1 + random.nextFloat() * 100, y = 1 + random.nextFloat() * 100;
+            Vertex a = new Vertex(x, y);
+            Vertex b = new Vertex(x + random.nextFloat() * 2, y + random.nextFloat() * 2);
+            segments.add(new MapRoadSegment(a, b, "road" + i, "tertiary", 50, true, false));
+        }
+    }
+
+    private List<MapElement> bruteForce(float[] min, float[] max) {
+        List<MapElement> results = new ArrayList<>();
+        for (MapRoadSegment s : segments) {
+            if (s.getMinPoint()[0] <= max[0] && s.getMaxPoint()[0] >= min[0]
+                    && s.getMinPoint()[1] <= max[1] && s.getMaxPoint()[1] >= min[1]) results.add(s);
+        }
+        return results;
+    }
+
+    private int depth(RTreeNode node) {
+        return node.isLeaf() ? 1 : 1 + depth(node.children.get(0));
+    }
+
+    // Every node but the root holds between min and max entries, all leaves are on the same level
+    private void assertWellFormed(RTree tree, RTreeNode node, int level, int leafLevel) {
+        int entries = node.isLeaf() ? node.elements.size() : node.children.size();
+        if (node != tree.getRoot()) assertTrue(entries >= tree.getMinChildren() && entries <= tree.getMaxChildren());
+        if (node.isLeaf()) {
+            assertEquals(leafLevel, level);
+            return;
+        }
+        for (RTreeNode child : node.children) {
+            assertTrue(node.getMinPoint()[0] <= child.getMinPoint()[0] && node.getMaxPoint()[1] >= child.getMaxPoint()[1]);
+            assertWellFormed(tree, child, level + 1, leafLevel);
+        }
+    }
+
+    @Test
+    void rStarInsertTest() {
+        RTree tree = new RTree(3, 8, RTree.splitStrategy.RSTAR);
+        for (MapRoadSegment s : segments) tree.insert(s);
+
+        assertEquals(segments.size(), tree.size());
+        List<MapElement> all = tree.query(new float[]{ 0, 0 }, new float[]{ 200, 200 });
+        assertEquals(segments.size(), new HashSet<>(all).size());
+        assertWellFormed(tree, tree.getRoot(), 1, depth(tree.getRoot()));
+
+        float[] min = { 20, 30 }, max = { 35, 40 };
+        Set<MapElement> results = new HashSet<>(tree.query(min, max));
+        for (MapElement e : bruteForce(min, max)) assertTrue(results.contains(e));
+    }
+
+    @Test
+    void quadraticSplitMinimumFillTest() {
+        RTree tree = new RTree(3, 8);
+        for (MapRoadSegment s : segments) tree.insert(s);
+
+        assertEquals(segments.size(), tree.query(new float[]{ 0, 0 }, new float[]{ 200, 200 }).size());
+        assertWellFormed(tree, tree.getRoot(), 1, depth(tree.getRoot()));
+    }
+
+    @Test
+    void bulkLoadContainsAllElementsTest() {
+        RTree tree = new RTree(2, 8);
+        tree.bulkLoad(segments);
+
+        assertEquals(segments.size(), tree.size());
+        List<MapElement> all = tree.query(new float[]{ 0, 0 }, new float[]{ 200, 200 });
+        assertEquals(segments.size(), all.size());
+        assertEquals(segments.size(), new HashSet<>(all).size());
+        // 2000 elements in full nodes of 8 need exactly four levels
+        assertEquals(4, depth(tree.getRoot()));
+    }
+
+    @Test
+    void bulkLoadQueryTest() {
+        RTree tree = new RTree(2, 8);
+        tree.bulkLoad(segments);
+
+        float[] min = { 20, 30 }, max = { 35, 40 };
+        Set<MapElement> results = new HashSet<>(tree.query(min, max));
+        for (MapElement e : bruteForce(min, max)) assertTrue(results.contains(e));
+    }
+
+    @Test
+    void bulkLoadKeepsInsertedElementsTest() {
+        RTree tree = new RTree(2, 4);
+        for (MapRoadSegment s : segments.subList(0, 100)) tree.insert(s);
+        tree.bulkLoad(segments.subList(100, segments.size()));
+
+        assertEquals(segments.size(), tree.query(new float[]{ 0, 0 }, new float[]{ 200, 200 }).size());
+    }
+
+    @Test
+    void packedLayoutTest() {
+        RTree tree = new RTree(2, 8);
+        tree.bulkLoad(segments.subList(0, 1000));
+        float[] min = { 20, 30 }, max = { 35, 40 };
+        int before = tree.query(min, max).size();
+
+        // Inserting after a query must not leave the packed copy of the tree stale
+        for (MapRoadSegment s : segments.subList(1000, segments.size())) tree.insert(s);
+        Set<MapElement> results = new HashSet<>(tree.query(min, max));
+        assertTrue(results.size() > before);
+        for (MapElement e : bruteForce(min, max)) assertTrue(results.contains(e));
+        assertEquals(segments.size(), tree.query(new float[]{ 0, 0 }, new float[]{ 200, 200 }).size());
+    }
+
+    @Test
+    void queryFilterTest() {
+        RTree tree = new RTree(2, 8);
+        tree.bulkLoad(segments);
+        float[] min = { 20, 30 }, max = { 35, 40 };
+
+        tree.setQueryFilter(RTree.queryFilter.LEAF);
+        Set<MapElement> leaves = new HashSet<>(tree.query(min, max));
+        tree.setQueryFilter(RTree.queryFilter.BOUNDING_BOX);
+        Set<MapElement> boxes = new HashSet<>(tree.query(min, max));
+        tree.setQueryFilter(RTree.queryFilter.CLIP);
+        Set<MapElement> clipped = new HashSet<>(tree.query(min, max));
+
+        assertEquals(new HashSet<>(bruteForce(min, max)), boxes);
+        assertTrue(leaves.containsAll(boxes) && leaves.size() > boxes.size());
+        assertTrue(boxes.containsAll(clipped));
+        // A diagonal segment whose bounding box only touches a corner of the query doesn't cross it
+        MapRoadSegment corner = new MapRoadSegment(new Vertex(34, 41.5F), new Vertex(36, 39.5F), "corner", "tertiary", 50, true, false);
+        tree.insert(corner);
+        assertFalse(tree.query(min, max).contains(corner));
+        tree.setQueryFilter(RTree.queryFilter.BOUNDING_BOX);
+        assertTrue(tree.query(min, max).contains(corner));
+    }
+
+    @Test
+    void nearestNeighborTest() {
+        RTree tree = new RTree(2, 8);
+        tree.bulkLoad(segments);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            float[] q = { 1 + random.nextFloat() * 100, 1 + random.nextFloat() * 100 };
+            float best = Float.MAX_VALUE;
+            for (MapRoadSegment s : segments) best = Math.min(best, RTreeMath.pointToRoadDistance(q, s));
+
+            MapRoadSegment found = (MapRoadSegment) tree.findNearestNeighbor(new MapPoint(q[0], q[1], ""));
+            assertEquals(best, RTreeMath.pointToRoadDistance(q, found), 1e-6F);
+        }
+    }
+
+    @Test
+    void nearestNeighborSkipsPathsTest() {
+        RTree tree = new RTree(2, 8);
+        List<MapElement> elements = new ArrayList<>(segments);
+        MapPath road = new MapPath("primary", 2);
+        road.add(50, 50);
+        road.add(51, 51);
+        elements.add(road);
+        tree.bulkLoad(elements);
+
+        assertTrue(tree.findNearestNeighbor(new MapPoint(50.5F, 50.5F, "")) instanceof MapRoadSegment);
+    }
+}
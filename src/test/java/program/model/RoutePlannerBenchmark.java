@@ -0,0 +1,92 @@
+package program.model;
+
+import program.shared.MapPoint;
+
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares the routing algorithms on long routes, between random vertices at least half the width of the
+ * map apart, by time and by the number of vertices settled per route. Every algorithm must find routes
+ * of the same length. Also times customizing the customizable hierarchy to every profile, and routes on the
+ * hierarchy customized to the profile of the mode of transport.
+ * Run with: gradle benchmark -Pbench=program.model.RoutePlannerBenchmark -Pargs="denmark-latest.zip.map CAR"
+ * The extract can be an .osm, .zip or .map file.
+ */
+public class RoutePlannerBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ROUTES = 50;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: RoutePlannerBenchmark <extract> [CAR|BIKE|WALK]");
+            return;
+        }
+        TreeStorage storage = args[0].endsWith(MapFile.EXTENSION)
+                ? MapFile.read(args[0], AddressBook.getInstance())
+                : DataParser.parse(args[0], AddressBook.getInstance(), true);
+        Model.MOT modeOfTransport = args.length > 1 ? Model.MOT.valueOf(args[1]) : Model.MOT.CAR;
+        Graph graph = storage.getGraph();
+        RoutePlanner planner = new RoutePlanner(storage);
+        MapPoint[][] routes = longRoutes(storage, graph, WARMUP + ROUTES);
+
+        System.out.printf("Vertices: %d, edges: %d, %s%n", graph.vertexCount(), graph.edgeCount(), modeOfTransport);
+        System.out.printf("%-10s %12s %12s%n", "algorithm", "settled", "ms");
+        float[] lengths = new float[routes.length];
+        for (RoutePlanner.algorithm algorithm : RoutePlanner.algorithm.values()) {
+            measure(algorithm.toString(), routes, lengths, algorithm.ordinal() == 0, route -> planner.planRoute(route[0], route[1], modeOfTransport, algorithm));
+        }
+
+        // The customizable hierarchy is read from a .map file, otherwise this includes building it
+        long start = System.nanoTime();
+        CustomizableHierarchy customizable = storage.getCustomizableHierarchy();
+        System.out.printf("Customizable hierarchy: %d arcs, %.0f ms%n", customizable.arcCount(), (System.nanoTime() - start) / 1e6);
+        for (Metric.profile profile : Metric.profile.values()) {
+            start = System.nanoTime();
+            storage.getCustomizedHierarchy(profile);
+            System.out.printf("Customized to %-20s %8.0f ms%n", profile, (System.nanoTime() - start) / 1e6);
+        }
+        Metric.profile profile = Metric.profile.valueOf(modeOfTransport.name());
+        measure("CCH", routes, lengths, false, route -> planner.planRoute(route[0], route[1], profile));
+    }
+
+    // Prints the settled vertices and time per route, checking the lengths against the first routes measured
+    private static void measure(String name, MapPoint[][] routes, float[] lengths, boolean first, Function<MapPoint[], Route> planner) {
+        long settled = 0, time = 0;
+        for (int i = 0; i < routes.length; i++) {
+            long start = System.nanoTime();
+            Route route = planRoute(planner, routes[i]);
+            long routeTime = System.nanoTime() - start;
+            float length = route == null ? Float.POSITIVE_INFINITY : route.getLength();
+            if (first) lengths[i] = length;
+            else if (Math.abs(length - lengths[i]) > lengths[i] * 1e-5) {
+                throw new IllegalStateException(name + " found a route of " + length + " instead of " + lengths[i]);
+            }
+            if (i < WARMUP || route == null) continue;
+            settled += route.getSettledCount();
+            time += routeTime;
+        }
+        System.out.printf("%-10s %12d %12.2f%n", name, settled / ROUTES, time / 1e6 / ROUTES);
+    }
+
+    private static Route planRoute(Function<MapPoint[], Route> planner, MapPoint[] route) {
+        try {
+            return planner.apply(route);
+        } catch (IllegalArgumentException e) {
+            // The ends are not connected for this mode of transport
+            return null;
+        }
+    }
+    private static MapPoint[][] longRoutes(TreeStorage storage, Graph graph, int count) {
+        Random random = new Random(count);
+        float width = 0.56F * (storage.getMaxLon() - storage.getMinLon());
+        MapPoint[][] routes = new MapPoint[count][];
+        for (int i = 0; i < count; ) {
+            Vertex s = graph.vertex(random.nextInt(graph.vertexCount())), t = graph.vertex(random.nextInt(graph.vertexCount()));
+            float dx = s.getX() - t.getX(), dy = s.getY() - t.getY();
+            if (dx * dx + dy * dy < width * width / 4) continue;
+            routes[i++] = new MapPoint[]{ new MapPoint(s.getX(), s.getY(), ""), new MapPoint(t.getX(), t.getY(), "") };
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,224 @@
+package program.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import program.shared.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePlannerTest {
+    static final int SIZE = 20;
+    // Road types the profiles weigh differently
+    static final String[] TYPES = { "residential", "residential", "service", "motorway", "cycleway", "primary" };
+    TreeStorage storage;
+    RoutePlanner planner;
+    List<MapPoint> from, to;
+
+    @BeforeEach
+    void setUp() {
+        // A grid of roads with random speeds
+        Random random = new Random(11);
+        Vertex[][] grid = new Vertex[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) for (int y = 0; y < SIZE; y++) grid[x][y] = new Vertex(x, y);
+        storage = new TreeStorage();
+        Graph.Builder graph = new Graph.Builder();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (x + 1 < SIZE) addRoad(graph, grid[x][y], grid[x + 1][y], 30 + random.nextInt(100), TYPES[random.nextInt(TYPES.length)]);
+                if (y + 1 < SIZE) addRoad(graph, grid[x][y], grid[x][y + 1], 30 + random.nextInt(100), TYPES[random.nextInt(TYPES.length)]);
+            }
+        }
+        storage.setGraph(graph.build());
+        planner = new RoutePlanner(storage);
+
+        from = new ArrayList<>();
+        to = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            from.add(new MapPoint(random.nextInt(SIZE / 2), random.nextInt(SIZE), ""));
+            to.add(new MapPoint(SIZE / 2 + random.nextInt(SIZE / 2), random.nextInt(SIZE), ""));
+        }
+    }
+
+    private void addRoad(Graph.Builder graph, Vertex a, Vertex b, int speed, String type) {
+        MapRoadSegment road = new MapRoadSegment(a, b, "vej", type, speed, true, false);
+        graph.addEdge(a, b, road.getDistance() / speed, road);
+        graph.addEdge(b, a, road.getDistance() / speed, road);
+        storage.insertRoadSegment(road);
+    }
+
+    private float expectedLength(int i) {
+        Graph graph = storage.getGraph();
+        int start = storage.nearestVertex(from.get(i)).getIndex(), end = storage.nearestVertex(to.get(i)).getIndex();
+        return new BiDirectionalDijkstra(graph, start, end, Model.MOT.CAR).currentShortestPathLength;
+    }
+
+    @Test
+    void planRoutesTest() {
+        List<Route> routes = planner.planRoutes(from, to, Model.MOT.CAR, RoutePlanner.algorithm.DIJKSTRA);
+        assertEquals(from.size(), routes.size());
+        for (int i = 0; i < routes.size(); i++) assertEquals(expectedLength(i), routes.get(i).getLength());
+    }
+
+    @Test
+    void concurrentPlanRouteTest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Route>> routes = new ArrayList<>();
+            // Every pair several times, so searches using the same pooled spaces overlap
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < from.size(); i++) {
+                    int pair = i;
+                    routes.add(pool.submit(() -> planner.planRoute(from.get(pair), to.get(pair), Model.MOT.CAR)));
+                }
+            }
+            for (int i = 0; i < routes.size(); i++) {
+                float expected = expectedLength(i % from.size());
+                // The default search on the contraction hierarchy may add up the same route in another order
+                assertEquals(expected, routes.get(i).get().getLength(), expected * 1e-5);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void aStarTest() {
+        int dijkstraSettled = 0, aStarSettled = 0;
+        for (Model.MOT modeOfTransport : Model.MOT.values()) {
+            for (int i = 0; i < from.size(); i++) {
+                Route dijkstra = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.DIJKSTRA);
+                Route aStar = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.A_STAR);
+                assertEquals(dijkstra.getLength(), aStar.getLength(), dijkstra.getLength() * 1e-5);
+                dijkstraSettled += dijkstra.getSettledCount();
+                aStarSettled += aStar.getSettledCount();
+            }
+        }
+        assertTrue(aStarSettled < dijkstraSettled, aStarSettled + " settled by A*, " + dijkstraSettled + " by Dijkstra");
+    }
+
+    @Test
+    void altTest() {
+        int aStarSettled = 0, altSettled = 0;
+        for (Model.MOT modeOfTransport : Model.MOT.values()) {
+            for (int i = 0; i < from.size(); i++) {
+                Route dijkstra = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.DIJKSTRA);
+                Route aStar = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.A_STAR);
+                Route alt = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.ALT);
+                assertEquals(dijkstra.getLength(), alt.getLength(), dijkstra.getLength() * 1e-5);
+                aStarSettled += aStar.getSettledCount();
+                altSettled += alt.getSettledCount();
+            }
+        }
+        assertTrue(altSettled < aStarSettled, altSettled + " settled by ALT, " + aStarSettled + " by A*");
+    }
+
+    @Test
+    void contractionHierarchyTest() {
+        for (Model.MOT modeOfTransport : Model.MOT.values()) {
+            for (int i = 0; i < from.size(); i++) {
+                Route dijkstra = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.DIJKSTRA);
+                Route ch = planner.planRoute(from.get(i), to.get(i), modeOfTransport, RoutePlanner.algorithm.CH);
+                assertEquals(dijkstra.getLength(), ch.getLength(), dijkstra.getLength() * 1e-5);
+
+                // Unpacked shortcuts must give a connected path of road segments
+                List<MapRoadSegment> path = ch.getPath();
+                for (int j = 1; j < path.size(); j++) {
+                    MapRoadSegment previous = path.get(j - 1), next = path.get(j);
+                    boolean connected = previous.getVertexA() == next.getVertexA() || previous.getVertexA() == next.getVertexB()
+                            || previous.getVertexB() == next.getVertexA() || previous.getVertexB() == next.getVertexB();
+                    assertTrue(connected, "Segments " + (j - 1) + " and " + j + " do not meet");
+                }
+            }
+        }
+    }
+
+    @Test
+    void profileTest() {
+        Graph graph = storage.getGraph();
+        for (Metric.profile profile : Metric.profile.values()) {
+            for (int i = 0; i < from.size(); i++) {
+                int start = storage.nearestVertex(from.get(i)).getIndex(), end = storage.nearestVertex(to.get(i)).getIndex();
+                float expected = distances(graph, start, profile)[end];
+                Route route = planner.planRoute(from.get(i), to.get(i), profile);
+                assertEquals(expected, route.getLength(), expected * 1e-5);
+            }
+        }
+    }
+
+    @Test
+    void profileLowerBoundTest() {
+        // The potentials of a mode of transport bound its plain weights, so no profile may weigh an edge less
+        Graph graph = storage.getGraph();
+        for (Metric.profile profile : Metric.profile.values()) {
+            for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                if (!graph.isAllowed(edge, profile.getModeOfTransport())) continue;
+                assertTrue(profile.weight(graph, edge) >= graph.weight(edge, profile.getModeOfTransport()));
+            }
+        }
+    }
+
+    // Plain Dijkstra by the metric
+    private static float[] distances(Graph graph, int source, Metric metric) {
+        float[] distTo = new float[graph.vertexCount()];
+        Arrays.fill(distTo, Float.POSITIVE_INFINITY);
+        IndexedMinHeap queue = new IndexedMinHeap(graph.vertexCount());
+        distTo[source] = 0;
+        queue.insertOrDecrease(source, 0);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                float distance = distTo[v] + metric.weight(graph, e);
+                if (distance >= distTo[graph.head[e]]) continue;
+                distTo[graph.head[e]] = distance;
+                queue.insertOrDecrease(graph.head[e], distance);
+            }
+        }
+        return distTo;
+    }
+
+    @Test
+    void distanceMatrixTest() {
+        Graph graph = storage.getGraph();
+        List<MapPoint> sources = from.subList(0, 10), targets = to.subList(0, 15);
+        for (Model.MOT modeOfTransport : Model.MOT.values()) {
+            float[][] matrix = planner.distanceMatrix(sources, targets, modeOfTransport);
+            assertEquals(sources.size(), matrix.length);
+            for (int i = 0; i < sources.size(); i++) {
+                int source = storage.nearestVertex(sources.get(i)).getIndex();
+                float[] expected = Landmarks.distances(graph, source, Graph.metric(modeOfTransport), false);
+                assertEquals(targets.size(), matrix[i].length);
+                for (int j = 0; j < targets.size(); j++) {
+                    float distance = expected[storage.nearestVertex(targets.get(j)).getIndex()];
+                    assertEquals(distance, matrix[i][j], distance * 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    void noRoadTest() {
+        // The graph without any road segments to find the nearest road among
+        TreeStorage empty = new TreeStorage();
+        empty.setGraph(storage.getGraph());
+        RoutePlanner emptyPlanner = new RoutePlanner(empty);
+
+        assertThrows(IllegalArgumentException.class, () -> emptyPlanner.planRoute(from.get(0), to.get(0), Model.MOT.CAR));
+        for (Route route : emptyPlanner.planRoutes(from.subList(0, 3), to.subList(0, 3), Model.MOT.CAR, RoutePlanner.algorithm.CH)) {
+            assertNull(route);
+        }
+        float[][] matrix = emptyPlanner.distanceMatrix(from.subList(0, 2), to.subList(0, 3), Model.MOT.CAR);
+        assertEquals(2, matrix.length);
+        for (float[] row : matrix) {
+            assertEquals(3, row.length);
+            for (float distance : row) assertEquals(Float.POSITIVE_INFINITY, distance);
+        }
+    }
+}
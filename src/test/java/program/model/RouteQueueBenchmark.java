@@ -0,0 +1,105 @@
+package program.model;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Compares the indexed heap used by the route search with the PriorityQueue it replaced, which removed and
+ * re-added a vertex to lower its distance. Both run the same one-to-all-until-target Dijkstra on long routes,
+ * between random vertices at least half the width of the map apart.
+ * Run with: gradle benchmark -Pbench=program.model.RouteQueueBenchmark -Pargs="denmark-latest.zip.map"
+ * The extract can be an .osm, .zip or .map file.
+ */
+public class RouteQueueBenchmark {
+    private static final int WARMUP = 3;
+    private static final int ROUTES = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: RouteQueueBenchmark <extract> [CAR|BIKE|WALK]");
+            return;
+        }
+        TreeStorage storage = args[0].endsWith(MapFile.EXTENSION)
+                ? MapFile.read(args[0], AddressBook.getInstance())
+                : DataParser.parse(args[0], AddressBook.getInstance(), true);
+        Model.MOT modeOfTransport = args.length > 1 ? Model.MOT.valueOf(args[1]) : Model.MOT.CAR;
+        Graph graph = storage.getGraph();
+        int[][] routes = longRoutes(storage, graph, WARMUP + ROUTES);
+
+        System.out.printf("Vertices: %d, edges: %d%n", graph.vertexCount(), graph.edgeCount());
+        System.out.printf("%-6s %12s %16s %16s %10s%n", "route", "settled", "PriorityQueue ms", "indexed heap ms", "speed-up");
+        IndexedMinHeap heap = new IndexedMinHeap(graph.vertexCount());
+        float[] distTo = new float[graph.vertexCount()];
+        for (int i = 0; i < routes.length; i++) {
+            long start = System.nanoTime();
+            float[] slow = priorityQueueDijkstra(graph, routes[i][0], routes[i][1], modeOfTransport, distTo);
+            long slowTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            float[] fast = heapDijkstra(graph, routes[i][0], routes[i][1], modeOfTransport, distTo, heap);
+            long fastTime = System.nanoTime() - start;
+            if (slow[0] != fast[0]) throw new IllegalStateException("Route " + i + " differs: " + slow[0] + " and " + fast[0]);
+            if (i < WARMUP) continue;
+            System.out.printf("%-6d %12d %16.1f %16.1f %9.2fx%n",
+                    i - WARMUP, (int) fast[1], slowTime / 1e6, fastTime / 1e6, (double) slowTime / fastTime);
+        }
+    }
+
+    private static int[][] longRoutes(TreeStorage storage, Graph graph, int count) {
+        Random random = new Random(count);
+        float width = 0.56F * (storage.getMaxLon() - storage.getMinLon());
+        int[][] routes = new int[count][];
+        for (int i = 0; i < count; ) {
+            int s = random.nextInt(graph.vertexCount()), t = random.nextInt(graph.vertexCount());
+            float dx = graph.vertex(s).getX() - graph.vertex(t).getX(), dy = graph.vertex(s).getY() - graph.vertex(t).getY();
+            if (dx * dx + dy * dy >= width * width / 4) routes[i++] = new int[]{ s, t };
+        }
+        return routes;
+    }
+
+    // Returns the distance and the number of settled vertices
+    private static float[] priorityQueueDijkstra(Graph graph, int source, int target, Model.MOT modeOfTransport, float[] distTo) {
+        Arrays.fill(distTo, Float.POSITIVE_INFINITY);
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> Float.compare(distTo[a], distTo[b]));
+        distTo[source] = 0;
+        queue.add(source);
+        int settled = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.remove();
+            settled++;
+            if (v == target) break;
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                if (!graph.isAllowed(e, modeOfTransport)) continue;
+                int w = graph.head[e];
+                float distance = distTo[v] + graph.weight(e, modeOfTransport);
+                if (distance >= distTo[w]) continue;
+                if (distTo[w] < Float.POSITIVE_INFINITY) queue.remove(w);
+                distTo[w] = distance;
+                queue.add(w);
+            }
+        }
+        return new float[]{ distTo[target], settled };
+    }
+
+    private static float[] heapDijkstra(Graph graph, int source, int target, Model.MOT modeOfTransport, float[] distTo, IndexedMinHeap queue) {
+        Arrays.fill(distTo, Float.POSITIVE_INFINITY);
+        queue.clear();
+        distTo[source] = 0;
+        queue.insertOrDecrease(source, 0);
+        int settled = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            settled++;
+            if (v == target) break;
+            for (int e = graph.firstOut[v]; e < graph.firstOut[v + 1]; e++) {
+                if (!graph.isAllowed(e, modeOfTransport)) continue;
+                int w = graph.head[e];
+                float distance = distTo[v] + graph.weight(e, modeOfTransport);
+                if (distance >= distTo[w]) continue;
+                distTo[w] = distance;
+                queue.insertOrDecrease(w, distance);
+            }
+        }
+        return new float[]{ distTo[target], settled };
+    }
+}
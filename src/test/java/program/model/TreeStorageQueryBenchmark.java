@@ -0,0 +1,65 @@
+package program.model;
+
+import program.shared.MapElement;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Compares sequential and parallel TreeStorage queries for viewports of every detail level.
+ * Run with: gradle benchmark -Pbench=program.model.TreeStorageQueryBenchmark -Pargs="denmark-latest.zip.map"
+ * The extract can be an .osm, .zip or .map file.
+ */
+public class TreeStorageQueryBenchmark {
+    private static final int WARMUP = 200;
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: TreeStorageQueryBenchmark <extract>");
+            return;
+        }
+        TreeStorage storage = args[0].endsWith(MapFile.EXTENSION)
+                ? MapFile.read(args[0], AddressBook.getInstance())
+                : DataParser.parse(args[0], AddressBook.getInstance(), true);
+
+        float[] mapMin = { 0.56F * storage.getMinLon(), storage.getMinLat() };
+        float[] mapMax = { 0.56F * storage.getMaxLon(), storage.getMaxLat() };
+
+        System.out.printf("Cores: %d%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %12s %12s %12s %10s%n", "detail", "elements", "serial us", "parallel us", "speed-up");
+        for (TreeStorage.detail detail : TreeStorage.detail.values()) {
+            // Viewports are sized like the zoom levels each detail is drawn at
+            float viewport = switch (detail) {
+                case LOW -> 0.25F;
+                case MEDIUM -> 0.05F;
+                case HIGH -> 0.01F;
+            };
+            storage.setParallelQuery(false);
+            run(storage, detail, viewport, mapMin, mapMax, WARMUP);
+            long[] serial = run(storage, detail, viewport, mapMin, mapMax, QUERIES);
+            storage.setParallelQuery(true);
+            run(storage, detail, viewport, mapMin, mapMax, WARMUP);
+            long[] parallel = run(storage, detail, viewport, mapMin, mapMax, QUERIES);
+
+            double serialTime = serial[0] / 1000.0 / QUERIES, parallelTime = parallel[0] / 1000.0 / QUERIES;
+            System.out.printf("%-8s %12d %12.1f %12.1f %9.2fx%n",
+                    detail, serial[1] / QUERIES, serialTime, parallelTime, serialTime / parallelTime);
+        }
+    }
+
+    // Returns the total time in nanoseconds and the number of elements found
+    private static long[] run(TreeStorage storage, TreeStorage.detail detail, float viewport, float[] mapMin, float[] mapMax, int queries) {
+        Random random = new Random(queries);
+        float width = (mapMax[0] - mapMin[0]) * viewport, height = (mapMax[1] - mapMin[1]) * viewport;
+        long[] found = { 0 };
+        Consumer<MapElement> count = e -> found[0]++;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            float x = mapMin[0] + random.nextFloat() * (mapMax[0] - mapMin[0] - width);
+            float y = mapMin[1] + random.nextFloat() * (mapMax[1] - mapMin[1] - height);
+            storage.query(new float[]{ x, y }, new float[]{ x + width, y + height }, detail, count);
+        }
+        return new long[]{ System.nanoTime() - start, found[0] };
+    }
+}
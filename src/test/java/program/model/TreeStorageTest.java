@@ -0,0 +1,76 @@
+package program.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import program.shared.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeStorageTest {
+    TreeStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new TreeStorage();
+        storage.insert(new MapRoadSegment(new Vertex(1, 1), new Vertex(2, 2), "Testvej", "primary", 50, true, false), "highway");
+        storage.insert(new MapRoadSegment(new Vertex(2, 2), new Vertex(3, 1), "Prøvevej", "residential", 50, true, false), "highway");
+
+        MapPath coast = new MapPath("coastline", 2);
+        coast.add(0, 0);
+        coast.add(5, 1);
+        storage.insert(coast, "natural");
+    }
+
+    @Test
+    void consumerQueryDrawOrderTest() {
+        float[] min = { 0, 0 }, max = { 10, 10 };
+        List<MapElement> streamed = new ArrayList<>();
+        storage.query(min, max, TreeStorage.detail.HIGH, streamed::add);
+
+        assertEquals(storage.query(min, max, TreeStorage.detail.HIGH), streamed);
+        assertEquals(3, streamed.size());
+        // Coastline is drawn below everything else, primary roads on top
+        assertEquals("coastline", streamed.get(0).getType());
+        assertEquals("primary", streamed.get(2).getType());
+    }
+
+    @Test
+    void parallelQueryTest() {
+        float[] min = { 0, 0 }, max = { 10, 10 };
+        List<MapElement> serial = storage.query(min, max, TreeStorage.detail.HIGH);
+        storage.setParallelQuery(true);
+        // Same elements in the same draw order
+        assertEquals(serial, storage.query(min, max, TreeStorage.detail.HIGH));
+    }
+
+    @Test
+    void consumerQueryDetailTest() {
+        List<MapElement> streamed = new ArrayList<>();
+        storage.query(new float[]{ 0, 0 }, new float[]{ 10, 10 }, TreeStorage.detail.MEDIUM, streamed::add);
+        // Residential roads are only drawn at HIGH detail
+        assertEquals(2, streamed.size());
+    }
+
+    @Test
+    void roadSegmentsAreNotDrawnTest() {
+        TreeStorage roads = new TreeStorage();
+        roads.startBulkLoad();
+        MapPath way = new MapPath("primary", 3);
+        way.add(1, 1);
+        way.add(2, 2);
+        way.add(3, 1);
+        roads.insert(way, "highway");
+        MapRoadSegment first = new MapRoadSegment(new Vertex(1, 1), new Vertex(2, 2), "Testvej", "primary", 50, true, false);
+        MapRoadSegment second = new MapRoadSegment(new Vertex(2, 2), new Vertex(3, 1), "Testvej", "primary", 50, true, false);
+        roads.insertRoadSegment(first);
+        roads.insertRoadSegment(second);
+        roads.finishBulkLoad();
+
+        // The way is drawn as one polyline, while the nearest road is still a single segment
+        assertEquals(List.of(way), roads.query(new float[]{ 0, 0 }, new float[]{ 10, 10 }, TreeStorage.detail.HIGH));
+        assertSame(second, roads.nearestNeighbor(new MapPoint(3, 1.2F, "")));
+    }
+}
@@ -0,0 +1,70 @@
+package program.shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LevelOfDetailTest {
+    // A zigzag along the x-axis whose teeth grow, so every tolerance removes a few more of them
+    private float[] zigzag(int count) {
+        float[] points = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = i * 0.001F;
+            points[2 * i + 1] = i % 2 == 0 ? 0 : i * 0.00002F;
+        }
+        return points;
+    }
+
+    @Test
+    void significanceTest() {
+        float[] points = { 0, 0, 1, 0.1F, 2, -1, 3, 0 };
+        float[] significance = LevelOfDetail.significance(points, false);
+
+        assertEquals(Float.POSITIVE_INFINITY, significance[0]);
+        assertEquals(Float.POSITIVE_INFINITY, significance[3]);
+        // The dip at x = 2 is split off first, the small bump at x = 1 is only needed for small tolerances
+        assertEquals(1, significance[2], 1e-6);
+        assertTrue(significance[1] < significance[2]);
+    }
+
+    @Test
+    void levelsTest() {
+        float[] points = zigzag(200);
+        float[][] levels = LevelOfDetail.levels(points, LevelOfDetail.significance(points, false));
+
+        assertSame(points, levels[0]);
+        for (int i = 1; i < levels.length; i++) {
+            assertTrue(levels[i].length <= levels[i - 1].length);
+            // End points are always kept
+            assertEquals(points[0], levels[i][0]);
+            assertEquals(points[points.length - 2], levels[i][levels[i].length - 2]);
+        }
+        assertTrue(levels[levels.length - 1].length < points.length / 2);
+    }
+
+    @Test
+    void closedShapeKeepsAreaTest() {
+        float[] square = { 0, 0, 1, 0, 1, 1, 0, 1, 0, 0 };
+        float[] significance = LevelOfDetail.significance(square, true);
+        // The corner opposite the first point always stays, so an area never collapses into a line
+        assertEquals(Float.POSITIVE_INFINITY, significance[2]);
+    }
+
+    @Test
+    void levelForTest() {
+        assertEquals(0, LevelOfDetail.levelFor(0.000001F));
+        assertTrue(LevelOfDetail.levelFor(0.001F) > LevelOfDetail.levelFor(0.0001F));
+    }
+
+    @Test
+    void pathSimplifyTest() {
+        float[] points = zigzag(200);
+        MapPath path = new MapPath("coastline", 200);
+        for (int i = 0; i < points.length; i += 2) path.add(points[i], points[i + 1]);
+        path.simplify();
+
+        assertNotNull(path.getSignificance());
+        assertEquals(0, path.getMinPoint()[0]);
+        assertEquals(points[points.length - 2], path.getMaxPoint()[0]);
+    }
+}